@@ -0,0 +1,312 @@
+package com.kun.datemcpserver.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 本地地理编码索引
+ * 从内置的GeoNames风格数据文件加载城市，提供城市名正向查询和经纬度反向查询，
+ * 未命中时由调用方回退到远程地理编码API
+ */
+@Component
+public class GeocodingIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(GeocodingIndex.class);
+
+    private static final String BUNDLED_DATA = "/geo/cities.tsv";
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final double KM_PER_DEGREE = 111.2;
+
+    // 1度网格，按 (纬度格, 经度格) 行优先编号
+    private static final int GRID_ROWS = 180;
+    private static final int GRID_COLS = 360;
+
+    private final double maxReverseDistanceKm;
+
+    // 城市数据按列存储，下标即城市ID
+    private String[] names = new String[0];
+    private double[] latitudes = new double[0];
+    private double[] longitudes = new double[0];
+    private double[] elevations = new double[0];
+    private long[] populations = new long[0];
+    private String[] countryCodes = new String[0];
+
+    // 名称索引：规范化后的名称有序数组，与城市ID一一对应
+    private String[] nameKeys = new String[0];
+    private int[] nameIds = new int[0];
+
+    // 网格索引：cellStart[c]..cellStart[c+1] 为落在网格c中的城市ID
+    private int[] cellStart = new int[GRID_ROWS * GRID_COLS + 1];
+    private int[] cellEntries = new int[0];
+
+    public GeocodingIndex(@Value("${geocoding.data-file:}") String dataFile,
+                          @Value("${geocoding.reverse-max-distance-km:80}") double maxReverseDistanceKm) {
+        this.maxReverseDistanceKm = maxReverseDistanceKm;
+        try {
+            load(readData(dataFile));
+            log.debug("地理编码索引已加载 {} 个城市", names.length);
+        } catch (Exception e) {
+            log.warn("加载地理编码数据失败，将仅使用远程API: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 城市信息
+     */
+    public record Place(String name, double latitude, double longitude, double elevation,
+                        String countryCode, long population) {
+    }
+
+    /**
+     * 根据城市名或别名查找城市，仅接受规范化后的精确匹配，同名时取人口最多者
+     * 不做前缀匹配：前缀命中的往往是另一座城市（如 "Dali" 会命中大连），应交给远程API处理
+     */
+    public Place findByName(String cityName) {
+        if (cityName == null) {
+            return null;
+        }
+        String key = normalize(cityName);
+        if (key.isEmpty()) {
+            return null;
+        }
+
+        int best = -1;
+        for (int i = lowerBound(key); i < nameKeys.length && nameKeys[i].equals(key); i++) {
+            best = morePopulous(best, nameIds[i]);
+        }
+        return best < 0 ? null : place(best);
+    }
+
+    /**
+     * 查找距离给定经纬度最近的城市，超出最大距离时返回null
+     */
+    public Place findNearest(double lat, double lon) {
+        if (names.length == 0 || Double.isNaN(lat) || Double.isNaN(lon)) {
+            return null;
+        }
+        int row = row(lat);
+        int col = col(lon);
+        int latRings = (int) Math.ceil(maxReverseDistanceKm / KM_PER_DEGREE);
+        int lonRings = GRID_COLS / 2;
+        // 搜索范围覆盖极点时，对侧经度的城市也可能在范围内，需搜索整圈
+        if ((90.0 - Math.abs(lat)) * KM_PER_DEGREE > maxReverseDistanceKm) {
+            double cosLat = Math.max(Math.cos(Math.toRadians(Math.min(Math.abs(lat) + latRings, 89.0))), 0.01);
+            lonRings = Math.min((int) Math.ceil(maxReverseDistanceKm / (KM_PER_DEGREE * cosLat)), lonRings);
+        }
+
+        int best = -1;
+        double bestDistance = maxReverseDistanceKm;
+        for (int r = Math.max(row - latRings, 0); r <= Math.min(row + latRings, GRID_ROWS - 1); r++) {
+            for (int dc = -lonRings; dc <= lonRings; dc++) {
+                int c = Math.floorMod(col + dc, GRID_COLS);
+                int cell = r * GRID_COLS + c;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int id = cellEntries[i];
+                    double distance = haversineKm(lat, lon, latitudes[id], longitudes[id]);
+                    if (distance <= bestDistance) {
+                        bestDistance = distance;
+                        best = id;
+                    }
+                }
+            }
+        }
+        return best < 0 ? null : place(best);
+    }
+
+    /**
+     * 已加载的城市数量
+     */
+    public int size() {
+        return names.length;
+    }
+
+    private Place place(int id) {
+        return new Place(names[id], latitudes[id], longitudes[id], elevations[id],
+                countryCodes[id], populations[id]);
+    }
+
+    private int morePopulous(int current, int candidate) {
+        return current < 0 || populations[candidate] > populations[current] ? candidate : current;
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = nameKeys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (nameKeys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 读取数据文件：外部文件和解包在文件系统中的资源使用内存映射，jar内资源读入堆内存
+     */
+    private static ByteBuffer readData(String dataFile) throws Exception {
+        if (dataFile != null && !dataFile.isBlank()) {
+            return map(Path.of(dataFile));
+        }
+        URL resource = GeocodingIndex.class.getResource(BUNDLED_DATA);
+        if (resource == null) {
+            throw new IOException("缺少内置数据文件 " + BUNDLED_DATA);
+        }
+        if ("file".equals(resource.getProtocol())) {
+            return map(Path.of(resource.toURI()));
+        }
+        try (InputStream in = resource.openStream()) {
+            return ByteBuffer.wrap(in.readAllBytes());
+        }
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * 解析数据并构建名称索引与网格索引
+     * 列：name, asciiname, alternatenames, latitude, longitude, country_code, population, elevation, timezone
+     */
+    private void load(ByteBuffer data) {
+        List<String[]> rows = new ArrayList<>();
+        int limit = data.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            while (lineEnd < limit && data.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd > lineStart && data.get(lineStart) != '#') {
+                byte[] line = new byte[lineEnd - lineStart];
+                data.get(lineStart, line);
+                String[] fields = new String(line, StandardCharsets.UTF_8).strip().split("\t", -1);
+                if (fields.length >= 8) {
+                    rows.add(fields);
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+
+        int count = rows.size();
+        String[] loadedNames = new String[count];
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        double[] elevs = new double[count];
+        long[] pops = new long[count];
+        String[] countries = new String[count];
+        List<String> keys = new ArrayList<>();
+        List<Integer> keyIds = new ArrayList<>();
+
+        for (int id = 0; id < count; id++) {
+            String[] fields = rows.get(id);
+            loadedNames[id] = fields[0];
+            lats[id] = Double.parseDouble(fields[3]);
+            lons[id] = Double.parseDouble(fields[4]);
+            countries[id] = fields[5];
+            pops[id] = fields[6].isEmpty() ? 0 : Long.parseLong(fields[6]);
+            elevs[id] = fields[7].isEmpty() ? 0.0 : Double.parseDouble(fields[7]);
+
+            List<String> aliases = new ArrayList<>();
+            aliases.add(fields[0]);
+            aliases.add(fields[1]);
+            aliases.addAll(Arrays.asList(fields[2].split(",")));
+            int cityId = id;
+            aliases.stream().map(GeocodingIndex::normalize).filter(k -> !k.isEmpty()).distinct().forEach(k -> {
+                keys.add(k);
+                keyIds.add(cityId);
+            });
+        }
+
+        Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> keys.get(a).compareTo(keys.get(b)));
+        String[] sortedKeys = new String[order.length];
+        int[] sortedIds = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedKeys[i] = keys.get(order[i]);
+            sortedIds[i] = keyIds.get(order[i]);
+        }
+
+        int[] starts = new int[GRID_ROWS * GRID_COLS + 1];
+        int[] cells = new int[count];
+        for (int id = 0; id < count; id++) {
+            cells[id] = row(lats[id]) * GRID_COLS + col(lons[id]);
+            starts[cells[id] + 1]++;
+        }
+        for (int c = 0; c < GRID_ROWS * GRID_COLS; c++) {
+            starts[c + 1] += starts[c];
+        }
+        int[] entries = new int[count];
+        int[] fill = Arrays.copyOf(starts, starts.length);
+        for (int id = 0; id < count; id++) {
+            entries[fill[cells[id]]++] = id;
+        }
+
+        this.names = loadedNames;
+        this.latitudes = lats;
+        this.longitudes = lons;
+        this.elevations = elevs;
+        this.populations = pops;
+        this.countryCodes = countries;
+        this.nameKeys = sortedKeys;
+        this.nameIds = sortedIds;
+        this.cellStart = starts;
+        this.cellEntries = entries;
+    }
+
+    /**
+     * 名称规范化：忽略大小写、空白和常见标点，去掉结尾的"市"
+     */
+    static String normalize(String name) {
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            if (Character.isLetterOrDigit(ch)) {
+                sb.append(Character.toLowerCase(ch));
+            }
+        }
+        int length = sb.length();
+        if (length > 2 && sb.charAt(length - 1) == '市') {
+            sb.setLength(length - 1);
+        }
+        return sb.toString();
+    }
+
+    private static int row(double lat) {
+        return Math.min(Math.max((int) Math.floor(lat + 90.0), 0), GRID_ROWS - 1);
+    }
+
+    private static int col(double lon) {
+        return Math.floorMod((int) Math.floor(lon + 180.0), GRID_COLS);
+    }
+
+    private static double haversineKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,134 @@
+package com.kun.datemcpserver.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 位置访问频率统计
+ * 记录天气查询涉及的位置，按指数衰减的访问次数给出热门位置，供后台预取使用
+ * 位置按快照存储相同的坐标粒度聚合，得分达到阈值才视为热门，衰减到接近0的位置从统计中移除
+ */
+@Component
+public class LocationAccessTracker {
+
+    // 得分低于该值的位置不再保留（单次访问约3.3个半衰期后），低于热门阈值的位置仍保留以便继续累积
+    private static final double FORGET_SCORE = 0.1;
+
+    private final Map<Long, HotLocation> locations = new ConcurrentHashMap<>();
+    private final double halfLifeMillis;
+    private final int maxTracked;
+    private final double minScore;
+
+    public LocationAccessTracker(@Value("${weather.prefetch.half-life-minutes:60}") long halfLifeMinutes,
+                                 @Value("${weather.prefetch.max-tracked:1000}") int maxTracked,
+                                 @Value("${weather.prefetch.min-score:1.5}") double minScore) {
+        this.halfLifeMillis = Duration.ofMinutes(halfLifeMinutes).toMillis();
+        this.maxTracked = maxTracked;
+        this.minScore = minScore;
+    }
+
+    /**
+     * 热门位置
+     */
+    public static class HotLocation {
+        private final WeatherSnapshotStore.Kind kind;
+        private final double latitude;
+        private final double longitude;
+        private volatile String cityName;
+        private double score;
+        private long lastAccess;
+
+        HotLocation(WeatherSnapshotStore.Kind kind, double latitude, double longitude) {
+            this.kind = kind;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        public WeatherSnapshotStore.Kind getKind() {
+            return kind;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        public String getCityName() {
+            return cityName;
+        }
+
+        synchronized void hit(long now, double halfLifeMillis) {
+            score = scoreAt(now, halfLifeMillis) + 1.0;
+            lastAccess = now;
+        }
+
+        synchronized double scoreAt(long now, double halfLifeMillis) {
+            return score * Math.pow(0.5, (now - lastAccess) / halfLifeMillis);
+        }
+    }
+
+    /**
+     * 记录一次访问
+     */
+    public void recordAccess(WeatherSnapshotStore.Kind kind, double lat, double lon, String cityName) {
+        long now = System.currentTimeMillis();
+        HotLocation location = locations.computeIfAbsent(WeatherSnapshotStore.key(kind, lat, lon), k -> new HotLocation(kind, lat, lon));
+        if (cityName != null) {
+            location.cityName = cityName;
+        }
+        location.hit(now, halfLifeMillis);
+
+        if (locations.size() > maxTracked) {
+            evict(now);
+        }
+    }
+
+    /**
+     * 获取得分不低于热门阈值的访问频率最高的K个位置
+     */
+    public List<HotLocation> getTopLocations(int k) {
+        return getTopLocations(k, System.currentTimeMillis());
+    }
+
+    List<HotLocation> getTopLocations(int k, long now) {
+        Map<HotLocation, Double> scores = new HashMap<>();
+        locations.forEach((key, l) -> {
+            double score = l.scoreAt(now, halfLifeMillis);
+            if (score >= minScore) {
+                scores.put(l, score);
+            } else if (score < FORGET_SCORE) {
+                locations.remove(key, l);
+            }
+        });
+        List<HotLocation> sorted = new ArrayList<>(scores.keySet());
+        sorted.sort(Comparator.comparingDouble(scores::get).reversed());
+        return sorted.subList(0, Math.min(k, sorted.size()));
+    }
+
+    /**
+     * 超出上限时淘汰得分较低的一半位置
+     */
+    private synchronized void evict(long now) {
+        if (locations.size() <= maxTracked) {
+            return;
+        }
+        Map<Long, Double> scores = new HashMap<>();
+        locations.forEach((key, l) -> scores.put(key, l.scoreAt(now, halfLifeMillis)));
+        List<Long> keys = new ArrayList<>(scores.keySet());
+        keys.sort(Comparator.comparingDouble(scores::get));
+        for (int i = 0; i < keys.size() / 2; i++) {
+            locations.remove(keys.get(i));
+        }
+    }
+}
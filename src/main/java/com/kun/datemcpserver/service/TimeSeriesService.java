@@ -0,0 +1,314 @@
+package com.kun.datemcpserver.service;
+
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 批量时间序列计算服务
+ * 对大量毫秒时间戳做分桶统计、排序、最值和间隔检测，只返回汇总结果
+ */
+@Service
+public class TimeSeriesService {
+
+    private static final DateTimeFormatter DEFAULT_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final String[] WEEK_DAYS = {"星期一", "星期二", "星期三", "星期四", "星期五", "星期六", "星期日"};
+
+    private static final long DEFAULT_GAP_THRESHOLD_MILLIS = 3_600_000L;
+    private static final int MAX_REPORTED_GAPS = 10;
+    private static final int MAX_DAY_BUCKETS = 1000;
+
+    // 超过该数量时使用fork-join并行计算
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    private static final int CHUNK_SIZE = 1 << 14;
+
+    private static final int SECONDS_PER_DAY = 86_400;
+    private static final int SECONDS_PER_HOUR = 3_600;
+
+    /**
+     * 分桶方式
+     */
+    private enum Bucket {
+        HOUR, DAY, WEEKDAY;
+
+        static Bucket of(String name) {
+            try {
+                return Bucket.valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (Exception e) {
+                throw new IllegalArgumentException("不支持的分桶方式: " + name + "，可选值：hour, day, weekday");
+            }
+        }
+    }
+
+    /**
+     * 分析一组毫秒时间戳
+     *
+     * @param timestamps         毫秒时间戳，无需有序
+     * @param zoneId             分桶和格式化使用的时区，为空时使用系统默认时区
+     * @param bucket             分桶方式：hour（按小时）、day（按日期）、weekday（按星期）
+     * @param gapThresholdMillis 间隔检测阈值（毫秒），小于等于0时使用默认值1小时
+     */
+    public Map<String, Object> analyzeTimestamps(long[] timestamps, String zoneId, String bucket, long gapThresholdMillis) {
+        if (timestamps == null || timestamps.length == 0) {
+            throw new IllegalArgumentException("时间戳列表不能为空");
+        }
+        ZoneId zone = parseZone(zoneId);
+        Bucket bucketType = Bucket.of(bucket);
+        long threshold = gapThresholdMillis > 0 ? gapThresholdMillis : DEFAULT_GAP_THRESHOLD_MILLIS;
+
+        long[] sorted = timestamps.clone();
+        boolean parallel = sorted.length >= PARALLEL_THRESHOLD;
+        if (parallel) {
+            Arrays.parallelSort(sorted);
+        } else {
+            Arrays.sort(sorted);
+        }
+
+        ChunkTask task = new ChunkTask(sorted, 0, sorted.length, zone.getRules(), bucketType, threshold);
+        ChunkResult aggregate = parallel ? ForkJoinPool.commonPool().invoke(task) : task.compute();
+
+        int count = sorted.length;
+        Map<String, Object> result = new HashMap<>();
+        result.put("count", count);
+        result.put("zone", zone.getId());
+        result.put("minTimestamp", sorted[0]);
+        result.put("maxTimestamp", sorted[count - 1]);
+        result.put("min", format(sorted[0], zone));
+        result.put("max", format(sorted[count - 1], zone));
+        result.put("median", format(sorted[count / 2], zone));
+        result.put("spanMillis", sorted[count - 1] - sorted[0]);
+        result.put("bucket", bucketType.name().toLowerCase(Locale.ROOT));
+        result.put("buckets", bucketLabels(bucketType, aggregate));
+        // 日期分桶超过上限时只返回最早的若干天，截断信息单独给出，buckets 中只有计数
+        int totalBuckets = bucketType == Bucket.DAY ? aggregate.days.size() : aggregate.histogram.length;
+        result.put("totalBuckets", totalBuckets);
+        result.put("bucketsTruncated", totalBuckets > MAX_DAY_BUCKETS);
+        result.put("gapThresholdMillis", threshold);
+        result.put("gapCount", aggregate.gapCount);
+
+        List<Map<String, Object>> gaps = new ArrayList<>();
+        for (int i = 0; i < aggregate.gapSize; i++) {
+            Map<String, Object> gap = new HashMap<>();
+            gap.put("start", format(aggregate.gapStarts[i], zone));
+            gap.put("end", format(aggregate.gapEnds[i], zone));
+            gap.put("durationMillis", aggregate.gapEnds[i] - aggregate.gapStarts[i]);
+            gaps.add(gap);
+        }
+        result.put("largestGaps", gaps);
+        return result;
+    }
+
+    private ZoneId parseZone(String zoneId) {
+        if (zoneId == null || zoneId.isBlank()) {
+            return ZoneId.systemDefault();
+        }
+        try {
+            return ZoneId.of(zoneId);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("无效的时区ID: " + zoneId);
+        }
+    }
+
+    private static String format(long timestamp, ZoneId zone) {
+        return Instant.ofEpochMilli(timestamp).atZone(zone).format(DEFAULT_FORMATTER);
+    }
+
+    private static Map<String, Long> bucketLabels(Bucket bucket, ChunkResult aggregate) {
+        Map<String, Long> labeled = new LinkedHashMap<>();
+        switch (bucket) {
+            case HOUR -> {
+                for (int h = 0; h < 24; h++) {
+                    labeled.put(String.format("%02d", h), aggregate.histogram[h]);
+                }
+            }
+            case WEEKDAY -> {
+                for (int d = 0; d < 7; d++) {
+                    labeled.put(WEEK_DAYS[d], aggregate.histogram[d]);
+                }
+            }
+            case DAY -> {
+                for (Map.Entry<Long, Long> e : aggregate.days.entrySet()) {
+                    if (labeled.size() >= MAX_DAY_BUCKETS) {
+                        break;
+                    }
+                    labeled.put(LocalDate.ofEpochDay(e.getKey()).toString(), e.getValue());
+                }
+            }
+        }
+        return labeled;
+    }
+
+    /**
+     * 一段连续区间的统计结果
+     */
+    private static final class ChunkResult {
+        final long[] histogram;
+        final TreeMap<Long, Long> days;
+        long gapCount;
+        // 按间隔长度降序保存的最大若干个间隔
+        final long[] gapStarts = new long[MAX_REPORTED_GAPS];
+        final long[] gapEnds = new long[MAX_REPORTED_GAPS];
+        int gapSize;
+
+        ChunkResult(Bucket bucket) {
+            this.histogram = new long[bucket == Bucket.HOUR ? 24 : 7];
+            this.days = bucket == Bucket.DAY ? new TreeMap<>() : null;
+        }
+
+        void addGap(long start, long end) {
+            gapCount++;
+            offerGap(start, end);
+        }
+
+        void offerGap(long start, long end) {
+            long length = end - start;
+            int pos = gapSize;
+            while (pos > 0 && gapEnds[pos - 1] - gapStarts[pos - 1] < length) {
+                pos--;
+            }
+            if (pos >= MAX_REPORTED_GAPS) {
+                return;
+            }
+            int last = Math.min(gapSize, MAX_REPORTED_GAPS - 1);
+            System.arraycopy(gapStarts, pos, gapStarts, pos + 1, last - pos);
+            System.arraycopy(gapEnds, pos, gapEnds, pos + 1, last - pos);
+            gapStarts[pos] = start;
+            gapEnds[pos] = end;
+            gapSize = Math.min(gapSize + 1, MAX_REPORTED_GAPS);
+        }
+
+        void merge(ChunkResult other) {
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other.histogram[i];
+            }
+            if (days != null) {
+                other.days.forEach((day, n) -> days.merge(day, n, Long::sum));
+            }
+            gapCount += other.gapCount;
+            for (int i = 0; i < other.gapSize; i++) {
+                offerGap(other.gapStarts[i], other.gapEnds[i]);
+            }
+        }
+    }
+
+    /**
+     * 对已排序数组的 [from, to) 区间做单遍统计，区间过大时拆分并行执行
+     */
+    private static final class ChunkTask extends RecursiveTask<ChunkResult> {
+        private final long[] sorted;
+        private final int from;
+        private final int to;
+        private final ZoneRules rules;
+        private final Bucket bucket;
+        private final long gapThreshold;
+
+        ChunkTask(long[] sorted, int from, int to, ZoneRules rules, Bucket bucket, long gapThreshold) {
+            this.sorted = sorted;
+            this.from = from;
+            this.to = to;
+            this.rules = rules;
+            this.bucket = bucket;
+            this.gapThreshold = gapThreshold;
+        }
+
+        @Override
+        protected ChunkResult compute() {
+            if (to - from > CHUNK_SIZE && getPool() != null) {
+                int mid = (from + to) >>> 1;
+                ChunkTask left = new ChunkTask(sorted, from, mid, rules, bucket, gapThreshold);
+                ChunkTask right = new ChunkTask(sorted, mid, to, rules, bucket, gapThreshold);
+                left.fork();
+                ChunkResult result = right.compute();
+                result.merge(left.join());
+                // 两段交界处的间隔
+                if (sorted[mid] - sorted[mid - 1] > gapThreshold) {
+                    result.addGap(sorted[mid - 1], sorted[mid]);
+                }
+                return result;
+            }
+            return computeDirectly();
+        }
+
+        private ChunkResult computeDirectly() {
+            ChunkResult result = new ChunkResult(bucket);
+            OffsetCursor offsets = new OffsetCursor(rules);
+            long currentDay = Long.MIN_VALUE;
+            long dayCount = 0;
+
+            for (int i = from; i < to; i++) {
+                long timestamp = sorted[i];
+                if (i > from && timestamp - sorted[i - 1] > gapThreshold) {
+                    result.addGap(sorted[i - 1], timestamp);
+                }
+
+                long localSeconds = Math.floorDiv(timestamp, 1000L) + offsets.offsetSeconds(timestamp);
+                long epochDay = Math.floorDiv(localSeconds, SECONDS_PER_DAY);
+                switch (bucket) {
+                    case HOUR -> result.histogram[Math.floorMod(localSeconds, SECONDS_PER_DAY) / SECONDS_PER_HOUR]++;
+                    // 1970-01-01 是星期四
+                    case WEEKDAY -> result.histogram[Math.floorMod(epochDay + 3, 7)]++;
+                    case DAY -> {
+                        // 有序输入下同一天的时间戳基本连续，按游程累加
+                        if (epochDay != currentDay) {
+                            if (dayCount > 0) {
+                                result.days.merge(currentDay, dayCount, Long::sum);
+                            }
+                            currentDay = epochDay;
+                            dayCount = 0;
+                        }
+                        dayCount++;
+                    }
+                }
+            }
+            if (dayCount > 0) {
+                result.days.merge(currentDay, dayCount, Long::sum);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 时区偏移游标：缓存当前偏移及其有效区间，仅在跨过时区规则变更时重新计算
+     */
+    private static final class OffsetCursor {
+        private final ZoneRules rules;
+        private long validFrom = Long.MAX_VALUE;
+        private long validUntil = Long.MIN_VALUE;
+        private int offsetSeconds;
+
+        OffsetCursor(ZoneRules rules) {
+            this.rules = rules;
+            if (rules.isFixedOffset()) {
+                validFrom = Long.MIN_VALUE;
+                validUntil = Long.MAX_VALUE;
+                offsetSeconds = rules.getOffset(Instant.EPOCH).getTotalSeconds();
+            }
+        }
+
+        int offsetSeconds(long timestamp) {
+            if (timestamp < validFrom || timestamp >= validUntil) {
+                Instant instant = Instant.ofEpochMilli(timestamp);
+                offsetSeconds = rules.getOffset(instant).getTotalSeconds();
+                ZoneOffsetTransition next = rules.nextTransition(instant);
+                validFrom = timestamp;
+                validUntil = next == null ? Long.MAX_VALUE : next.toEpochSecond() * 1000L;
+            }
+            return offsetSeconds;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.kun.datemcpserver.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.net.ssl.SSLSession;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 上游HTTP传输层
+ * 所有对Open-Meteo的请求共用一个HttpClient：优先HTTP/2多路复用并复用长连接，
+ * 使用独立的有界线程池，请求gzip/deflate压缩并在解析JSON时流式解压，
+ * 同时按主机统计传输字节数和不同TLS会话数
+ */
+@Component
+public class UpstreamHttpTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(UpstreamHttpTransport.class);
+
+    private static final int MAX_TRACKED_SESSIONS = 10_000;
+
+    private final HttpClient httpClient;
+    private final ThreadPoolExecutor executor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Duration requestTimeout;
+    private final boolean compression;
+    private final boolean warmUpEnabled;
+    private final Map<String, HostStats> stats = new ConcurrentHashMap<>();
+
+    public UpstreamHttpTransport(@Value("${weather.http.version:HTTP_2}") String version,
+                                 @Value("${weather.http.connect-timeout-seconds:10}") long connectTimeoutSeconds,
+                                 @Value("${weather.http.request-timeout-seconds:10}") long requestTimeoutSeconds,
+                                 @Value("${weather.http.executor-threads:4}") int executorThreads,
+                                 @Value("${weather.http.executor-queue-capacity:256}") int executorQueueCapacity,
+                                 @Value("${weather.http.compression:true}") boolean compression,
+                                 @Value("${weather.http.warm-up:true}") boolean warmUpEnabled) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(executorThreads, executorThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(executorQueueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, "upstream-http-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // HttpClient 会把内部的异步任务和响应处理交给该线程池，队列满时若由提交线程执行，
+                // 可能占用客户端的选择器线程而阻塞所有HTTP/2流；拒绝后由HttpClient自行处理
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.valueOf(version.trim().toUpperCase(Locale.ROOT)))
+                .connectTimeout(Duration.ofSeconds(connectTimeoutSeconds))
+                .executor(executor)
+                .build();
+        this.requestTimeout = Duration.ofSeconds(requestTimeoutSeconds);
+        this.compression = compression;
+        this.warmUpEnabled = warmUpEnabled;
+    }
+
+    /**
+     * 单个主机的传输统计
+     */
+    private static class HostStats {
+        final LongAdder requests = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder warmUps = new LongAdder();
+        final LongAdder http2Responses = new LongAdder();
+        final LongAdder compressedResponses = new LongAdder();
+        final LongAdder wireBytes = new LongAdder();
+        final LongAdder decodedBytes = new LongAdder();
+        // 正式请求使用的不同TLS会话；会话恢复时多个连接可共用同一会话，因此会话数不多于连接数
+        final Set<String> tlsSessions = ConcurrentHashMap.newKeySet();
+        // 会话数达到上限后不再统计
+        volatile boolean sessionsSaturated;
+    }
+
+    /**
+     * 发送GET请求并将响应体流式解压、解析为JSON，非2xx响应抛出带上游错误原因的IOException
+     */
+    public JsonNode getJson(String url) throws IOException, InterruptedException {
+        URI uri = URI.create(url);
+        HostStats hostStats = stats.computeIfAbsent(uri.getHost(), h -> new HostStats());
+        hostStats.requests.increment();
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(uri)
+                .timeout(requestTimeout)
+                .GET();
+        if (compression) {
+            builder.header("Accept-Encoding", "gzip, deflate");
+        }
+
+        try {
+            HttpResponse<InputStream> response = httpClient.send(builder.build(),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            recordConnection(hostStats, response);
+
+            String encoding = response.headers().firstValue("Content-Encoding").orElse("identity");
+            try (InputStream raw = response.body();
+                 InputStream body = decode(new CountingInputStream(raw, hostStats.wireBytes), encoding, hostStats)) {
+                InputStream counted = new CountingInputStream(body, hostStats.decodedBytes);
+                int status = response.statusCode();
+                if (status < 200 || status >= 300) {
+                    throw new IOException("上游请求失败 (HTTP " + status + "): " + readErrorReason(counted));
+                }
+                return objectMapper.readTree(counted);
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            hostStats.failures.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * 预热连接：异步完成DNS解析、TLS握手并建立到各主机的连接，失败时忽略
+     * 预热请求只计数，不计入TLS会话统计
+     */
+    public void warmUp(List<String> urls) {
+        if (!warmUpEnabled) {
+            return;
+        }
+        for (String url : urls) {
+            URI uri = URI.create(url);
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(uri)
+                    .timeout(requestTimeout)
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .build();
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, e) -> {
+                        if (e != null) {
+                            log.debug("预热上游连接 {} 失败: {}", uri.getHost(), e.getMessage());
+                            return;
+                        }
+                        HostStats hostStats = stats.computeIfAbsent(uri.getHost(), h -> new HostStats());
+                        hostStats.warmUps.increment();
+                        log.debug("已预热上游连接 {} ({})", uri.getHost(), response.version());
+                    });
+        }
+    }
+
+    /**
+     * 获取按主机统计的传输信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> hosts = new HashMap<>();
+        long totalRequests = 0;
+        long totalWireBytes = 0;
+        long totalDecodedBytes = 0;
+        for (Map.Entry<String, HostStats> e : stats.entrySet()) {
+            HostStats s = e.getValue();
+            long requests = s.requests.sum();
+            long wireBytes = s.wireBytes.sum();
+            long decodedBytes = s.decodedBytes.sum();
+            int sessions = s.tlsSessions.size();
+
+            Map<String, Object> host = new HashMap<>();
+            host.put("requests", requests);
+            host.put("failures", s.failures.sum());
+            host.put("warmUps", s.warmUps.sum());
+            host.put("http2Responses", s.http2Responses.sum());
+            host.put("compressedResponses", s.compressedResponses.sum());
+            host.put("wireBytes", wireBytes);
+            host.put("decodedBytes", decodedBytes);
+            host.put("compressionRatio", decodedBytes > 0 ? (double) wireBytes / decodedBytes : 1.0);
+            // TLS会话数只是连接数的下限，由此得到的是复用率的上限而非实测值；
+            // 非TLS连接或会话数超出上限时不报告
+            if (sessions > 0 && !s.sessionsSaturated) {
+                host.put("distinctTlsSessions", sessions);
+                host.put("reuseRateUpperBound", Math.max(0.0, 1.0 - (double) sessions / requests));
+            }
+            hosts.put(e.getKey(), host);
+
+            totalRequests += requests;
+            totalWireBytes += wireBytes;
+            totalDecodedBytes += decodedBytes;
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("hosts", hosts);
+        result.put("totalRequests", totalRequests);
+        result.put("totalWireBytes", totalWireBytes);
+        result.put("totalDecodedBytes", totalDecodedBytes);
+        result.put("executorActiveThreads", executor.getActiveCount());
+        result.put("executorQueueSize", executor.getQueue().size());
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static void recordConnection(HostStats hostStats, HttpResponse<?> response) {
+        if (response.version() == HttpClient.Version.HTTP_2) {
+            hostStats.http2Responses.increment();
+        }
+        response.sslSession()
+                .map(SSLSession::getId)
+                .filter(id -> id.length > 0)
+                .map(id -> HexFormat.of().formatHex(id))
+                .ifPresent(id -> {
+                    if (hostStats.tlsSessions.size() < MAX_TRACKED_SESSIONS) {
+                        hostStats.tlsSessions.add(id);
+                    } else if (!hostStats.tlsSessions.contains(id)) {
+                        hostStats.sessionsSaturated = true;
+                    }
+                });
+    }
+
+    /**
+     * 读取错误响应中Open-Meteo的 reason 字段，响应体不是JSON时返回通用说明
+     */
+    private String readErrorReason(InputStream body) {
+        try {
+            JsonNode error = objectMapper.readTree(body);
+            if (error != null && error.hasNonNull("reason")) {
+                return error.get("reason").asText();
+            }
+        } catch (IOException e) {
+            log.debug("解析上游错误响应失败: {}", e.getMessage());
+        }
+        return "上游未返回错误原因";
+    }
+
+    private static InputStream decode(InputStream in, String encoding, HostStats hostStats) throws IOException {
+        return switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+            case "gzip", "x-gzip" -> {
+                hostStats.compressedResponses.increment();
+                yield new GZIPInputStream(in);
+            }
+            case "deflate" -> {
+                hostStats.compressedResponses.increment();
+                yield new InflaterInputStream(in);
+            }
+            default -> in;
+        };
+    }
+
+    /**
+     * 统计读取字节数的输入流
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final LongAdder counter;
+
+        CountingInputStream(InputStream in, LongAdder counter) {
+            super(in);
+            this.counter = counter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                counter.increment();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                counter.add(n);
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.kun.datemcpserver.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热门位置天气预取
+ * 定期取访问频率最高的K个位置，在快照过期前批量刷新，使用户请求尽量直接命中本地快照
+ * 每小时的上游请求数受预算限制，各批次按随机延迟交给任务调度器执行以分散请求，不在调度线程上等待
+ */
+@Component
+public class WeatherPrefetchScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(WeatherPrefetchScheduler.class);
+
+    private final WeatherService weatherService;
+    private final WeatherSnapshotStore snapshotStore;
+    private final LocationAccessTracker accessTracker;
+    private final TaskScheduler taskScheduler;
+
+    private final boolean enabled;
+    private final int topK;
+    private final int batchSize;
+    private final long refreshAheadMillis;
+    private final long maxJitterMillis;
+    private final int maxRequestsPerHour;
+
+    private long budgetWindowStart;
+    private int requestsInWindow;
+
+    public WeatherPrefetchScheduler(WeatherService weatherService,
+                                    WeatherSnapshotStore snapshotStore,
+                                    LocationAccessTracker accessTracker,
+                                    TaskScheduler taskScheduler,
+                                    @Value("${weather.prefetch.enabled:true}") boolean enabled,
+                                    @Value("${weather.prefetch.top-k:20}") int topK,
+                                    @Value("${weather.prefetch.batch-size:10}") int batchSize,
+                                    @Value("${weather.prefetch.refresh-ahead-seconds:120}") long refreshAheadSeconds,
+                                    @Value("${weather.prefetch.max-jitter-millis:3000}") long maxJitterMillis,
+                                    @Value("${weather.prefetch.max-requests-per-hour:60}") int maxRequestsPerHour) {
+        this.weatherService = weatherService;
+        this.snapshotStore = snapshotStore;
+        this.accessTracker = accessTracker;
+        this.taskScheduler = taskScheduler;
+        this.enabled = enabled;
+        this.topK = topK;
+        this.batchSize = Math.max(batchSize, 1);
+        this.refreshAheadMillis = Duration.ofSeconds(refreshAheadSeconds).toMillis();
+        this.maxJitterMillis = maxJitterMillis;
+        this.maxRequestsPerHour = maxRequestsPerHour;
+    }
+
+    /**
+     * 刷新即将过期的热门位置
+     */
+    @Scheduled(initialDelayString = "${weather.prefetch.initial-delay-seconds:30}",
+            fixedDelayString = "${weather.prefetch.interval-seconds:60}",
+            timeUnit = TimeUnit.SECONDS)
+    public void prefetch() {
+        // 没有本地存储时无法判断快照是否即将过期，刷新结果也无处保存
+        if (!enabled || !snapshotStore.isEnabled()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<LocationAccessTracker.HotLocation> current = new ArrayList<>();
+        List<LocationAccessTracker.HotLocation> forecast = new ArrayList<>();
+        for (LocationAccessTracker.HotLocation location : accessTracker.getTopLocations(topK)) {
+            if (!isExpiringSoon(location, now)) {
+                continue;
+            }
+            if (location.getKind() == WeatherSnapshotStore.Kind.CURRENT) {
+                current.add(location);
+            } else {
+                forecast.add(location);
+            }
+        }
+
+        scheduleBatches(WeatherSnapshotStore.Kind.CURRENT, current);
+        scheduleBatches(WeatherSnapshotStore.Kind.FORECAST, forecast);
+    }
+
+    private boolean isExpiringSoon(LocationAccessTracker.HotLocation location, long now) {
+        WeatherSnapshotStore.Kind kind = location.getKind();
+        if (kind == WeatherSnapshotStore.Kind.AIR_QUALITY) {
+            return false;
+        }
+        long fetchedAt = snapshotStore.getLatestFetchTime(kind, location.getLatitude(), location.getLongitude());
+        return fetchedAt < 0 || now - fetchedAt >= snapshotStore.getTtlMillis(kind) - refreshAheadMillis;
+    }
+
+    private void scheduleBatches(WeatherSnapshotStore.Kind kind, List<LocationAccessTracker.HotLocation> locations) {
+        for (int from = 0; from < locations.size(); from += batchSize) {
+            if (!acquireBudget()) {
+                log.debug("已达到每小时 {} 次的预取请求预算，跳过剩余位置", maxRequestsPerHour);
+                break;
+            }
+            List<LocationAccessTracker.HotLocation> batch =
+                    List.copyOf(locations.subList(from, Math.min(from + batchSize, locations.size())));
+            taskScheduler.schedule(() -> refresh(kind, batch), Instant.now().plusMillis(jitterMillis()));
+        }
+    }
+
+    private void refresh(WeatherSnapshotStore.Kind kind, List<LocationAccessTracker.HotLocation> batch) {
+        try {
+            int refreshed = weatherService.refreshSnapshots(kind, batch);
+            log.debug("预取刷新了 {} 个热门位置的天气快照", refreshed);
+        } catch (RuntimeException e) {
+            log.warn("预取天气数据失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 按小时窗口计数的上游请求预算
+     */
+    private boolean acquireBudget() {
+        long now = System.currentTimeMillis();
+        if (now - budgetWindowStart >= Duration.ofHours(1).toMillis()) {
+            budgetWindowStart = now;
+            requestsInWindow = 0;
+        }
+        if (requestsInWindow >= maxRequestsPerHour) {
+            return false;
+        }
+        requestsInWindow++;
+        return true;
+    }
+
+    private long jitterMillis() {
+        return maxJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(maxJitterMillis + 1) : 0;
+    }
+}
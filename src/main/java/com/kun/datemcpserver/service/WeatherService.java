@@ -1,14 +1,11 @@
 package com.kun.datemcpserver.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
-import java.net.URI;
 import java.net.URLEncoder;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.LocalDate;
@@ -16,7 +13,9 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * 天气服务
@@ -25,40 +24,61 @@ import java.util.Map;
 @Service
 public class WeatherService {
 
-    private final HttpClient httpClient;
-    private final ObjectMapper objectMapper;
+    private final UpstreamHttpTransport transport;
+    private final GeocodingIndex geocodingIndex;
+    private final WeatherSnapshotStore snapshotStore;
+    private final LocationAccessTracker accessTracker;
 
     // Open-Meteo API URLs
     private static final String GEOCODING_URL = "https://geocoding-api.open-meteo.com/v1/search";
     private static final String WEATHER_URL = "https://api.open-meteo.com/v1/forecast";
     private static final String AIR_QUALITY_URL = "https://air-quality-api.open-meteo.com/v1/air-quality";
 
-    public WeatherService() {
-        this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
-        this.objectMapper = new ObjectMapper();
+    private static final String CURRENT_FIELDS = "temperature_2m,relative_humidity_2m,apparent_temperature,precipitation,weather_code,surface_pressure,wind_speed_10m,wind_direction_10m";
+    private static final String DAILY_FIELDS = "weather_code,temperature_2m_max,temperature_2m_min,precipitation_sum,wind_speed_10m_max";
+
+    public WeatherService(UpstreamHttpTransport transport, GeocodingIndex geocodingIndex,
+                          WeatherSnapshotStore snapshotStore, LocationAccessTracker accessTracker) {
+        this.transport = transport;
+        this.geocodingIndex = geocodingIndex;
+        this.snapshotStore = snapshotStore;
+        this.accessTracker = accessTracker;
+    }
+
+    /**
+     * 启动完成后预热到各上游主机的连接
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpConnections() {
+        transport.warmUp(List.of(GEOCODING_URL, WEATHER_URL, AIR_QUALITY_URL));
     }
 
     /**
-     * 根据城市名获取经纬度
+     * 获取上游传输统计：按主机的请求数、传输字节数、压缩率和TLS会话数
+     */
+    public Map<String, Object> getTransportStats() {
+        return transport.getStats();
+    }
+
+    /**
+     * 根据城市名获取经纬度，优先使用本地地理编码索引，未命中时调用远程API
      */
     private Map<String, Double> getCoordinatesByCity(String cityName) {
+        GeocodingIndex.Place place = geocodingIndex.findByName(cityName);
+        if (place != null) {
+            Map<String, Double> coordinates = new HashMap<>();
+            coordinates.put("latitude", place.latitude());
+            coordinates.put("longitude", place.longitude());
+            coordinates.put("elevation", place.elevation());
+            return coordinates;
+        }
+
         try {
             String encodedCity = URLEncoder.encode(cityName, StandardCharsets.UTF_8);
             String url = String.format("%s?name=%s&count=1&language=zh&format=json",
                     GEOCODING_URL, encodedCity);
 
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .timeout(Duration.ofSeconds(10))
-                    .GET()
-                    .build();
-
-            HttpResponse<String> response = httpClient.send(request,
-                    HttpResponse.BodyHandlers.ofString());
-
-            JsonNode jsonNode = objectMapper.readTree(response.body());
+            JsonNode jsonNode = transport.getJson(url);
             JsonNode results = jsonNode.get("results");
 
             if (results == null || results.size() == 0) {
@@ -87,59 +107,73 @@ public class WeatherService {
                 coordinates.get("longitude"), cityName);
     }
 
+    /**
+     * 根据经纬度反查最近的城市名，查不到时返回null
+     */
+    private String getCityNameByCoordinates(double lat, double lon) {
+        GeocodingIndex.Place place = geocodingIndex.findNearest(lat, lon);
+        return place != null ? place.name() : null;
+    }
+
     /**
      * 根据经纬度获取当前天气
      */
     public Map<String, Object> getCurrentWeatherByCoordinates(double lat, double lon) {
-        return getCurrentWeatherByCoordinates(lat, lon, null);
+        return getCurrentWeatherByCoordinates(lat, lon, getCityNameByCoordinates(lat, lon));
     }
 
     /**
      * 根据经纬度获取当前天气（内部方法）
      */
     private Map<String, Object> getCurrentWeatherByCoordinates(double lat, double lon, String cityName) {
+        accessTracker.recordAccess(WeatherSnapshotStore.Kind.CURRENT, lat, lon, cityName);
+        Map<String, Object> cached = snapshotStore.getFresh(WeatherSnapshotStore.Kind.CURRENT, lat, lon);
+        if (cached != null) {
+            cached.put("city", cityName != null ? cityName : "未知位置");
+            return cached;
+        }
+
         try {
             String url = String.format(
-                    "%s?latitude=%.6f&longitude=%.6f&current=temperature_2m,relative_humidity_2m,apparent_temperature,precipitation,weather_code,surface_pressure,wind_speed_10m,wind_direction_10m&timezone=auto",
-                    WEATHER_URL, lat, lon);
+                    "%s?latitude=%.6f&longitude=%.6f&current=%s&timezone=auto",
+                    WEATHER_URL, lat, lon, CURRENT_FIELDS);
 
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .timeout(Duration.ofSeconds(10))
-                    .GET()
-                    .build();
-
-            HttpResponse<String> response = httpClient.send(request,
-                    HttpResponse.BodyHandlers.ofString());
-
-            JsonNode jsonNode = objectMapper.readTree(response.body());
-            JsonNode current = jsonNode.get("current");
-
-            Map<String, Object> weather = new HashMap<>();
-            weather.put("city", cityName != null ? cityName : "未知位置");
-            weather.put("latitude", lat);
-            weather.put("longitude", lon);
-            weather.put("temperature", current.get("temperature_2m").asDouble());
-            weather.put("feelsLike", current.get("apparent_temperature").asDouble());
-            weather.put("humidity", current.get("relative_humidity_2m").asInt());
-            weather.put("pressure", current.get("surface_pressure").asDouble());
-            weather.put("windSpeed", current.get("wind_speed_10m").asDouble());
-            weather.put("windDirection", current.get("wind_direction_10m").asDouble());
-            weather.put("precipitation", current.get("precipitation").asDouble());
-
-            // 天气代码转换为描述
-            int weatherCode = current.get("weather_code").asInt();
-            weather.put("weatherCode", weatherCode);
-            weather.put("description", getWeatherDescription(weatherCode));
-
-            weather.put("updateTime", current.get("time").asText());
+            JsonNode jsonNode = transport.getJson(url);
+            Map<String, Object> weather = parseCurrentWeather(jsonNode.get("current"), lat, lon, cityName);
 
+            snapshotStore.save(WeatherSnapshotStore.Kind.CURRENT, lat, lon, weather);
             return weather;
         } catch (Exception e) {
             throw new RuntimeException("获取天气信息失败: " + e.getMessage());
         }
     }
 
+    /**
+     * 解析当前天气数据
+     */
+    private Map<String, Object> parseCurrentWeather(JsonNode current, double lat, double lon, String cityName) {
+        Map<String, Object> weather = new HashMap<>();
+        weather.put("city", cityName != null ? cityName : "未知位置");
+        weather.put("latitude", lat);
+        weather.put("longitude", lon);
+        weather.put("temperature", current.get("temperature_2m").asDouble());
+        weather.put("feelsLike", current.get("apparent_temperature").asDouble());
+        weather.put("humidity", current.get("relative_humidity_2m").asInt());
+        weather.put("pressure", current.get("surface_pressure").asDouble());
+        weather.put("windSpeed", current.get("wind_speed_10m").asDouble());
+        weather.put("windDirection", current.get("wind_direction_10m").asDouble());
+        weather.put("precipitation", current.get("precipitation").asDouble());
+
+        // 天气代码转换为描述
+        int weatherCode = current.get("weather_code").asInt();
+        weather.put("weatherCode", weatherCode);
+        weather.put("description", getWeatherDescription(weatherCode));
+
+        weather.put("updateTime", current.get("time").asText());
+
+        return weather;
+    }
+
     /**
      * 获取7天天气预报
      */
@@ -153,62 +187,76 @@ public class WeatherService {
      * 根据经纬度获取7天天气预报
      */
     public Map<String, Object> getWeatherForecastByCoordinates(double lat, double lon, String cityName) {
+        if (cityName == null || cityName.isBlank()) {
+            cityName = getCityNameByCoordinates(lat, lon);
+        }
+        accessTracker.recordAccess(WeatherSnapshotStore.Kind.FORECAST, lat, lon, cityName);
+        Map<String, Object> cached = snapshotStore.getFresh(WeatherSnapshotStore.Kind.FORECAST, lat, lon);
+        if (cached != null) {
+            cached.put("city", cityName != null ? cityName : "未知位置");
+            return cached;
+        }
+
         try {
             String url = String.format(
-                    "%s?latitude=%.6f&longitude=%.6f&daily=weather_code,temperature_2m_max,temperature_2m_min,precipitation_sum,wind_speed_10m_max&timezone=auto",
-                    WEATHER_URL, lat, lon);
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .timeout(Duration.ofSeconds(10))
-                    .GET()
-                    .build();
-
-            HttpResponse<String> response = httpClient.send(request,
-                    HttpResponse.BodyHandlers.ofString());
-
-            JsonNode jsonNode = objectMapper.readTree(response.body());
-            JsonNode daily = jsonNode.get("daily");
-
-            Map<String, Object> forecast = new HashMap<>();
-            forecast.put("city", cityName != null ? cityName : "未知位置");
-            forecast.put("latitude", lat);
-            forecast.put("longitude", lon);
-
-            List<Map<String, Object>> dailyForecast = new ArrayList<>();
-            JsonNode dates = daily.get("time");
-            JsonNode maxTemps = daily.get("temperature_2m_max");
-            JsonNode minTemps = daily.get("temperature_2m_min");
-            JsonNode weatherCodes = daily.get("weather_code");
-            JsonNode precipitations = daily.get("precipitation_sum");
-            JsonNode windSpeeds = daily.get("wind_speed_10m_max");
-
-            for (int i = 0; i < dates.size(); i++) {
-                Map<String, Object> dayWeather = new HashMap<>();
-                dayWeather.put("date", dates.get(i).asText());
-                dayWeather.put("maxTemp", maxTemps.get(i).asDouble());
-                dayWeather.put("minTemp", minTemps.get(i).asDouble());
-                dayWeather.put("precipitation", precipitations.get(i).asDouble());
-                dayWeather.put("windSpeed", windSpeeds.get(i).asDouble());
-
-                int weatherCode = weatherCodes.get(i).asInt();
-                dayWeather.put("weatherCode", weatherCode);
-                dayWeather.put("description", getWeatherDescription(weatherCode));
-
-                dailyForecast.add(dayWeather);
-            }
+                    "%s?latitude=%.6f&longitude=%.6f&daily=%s&timezone=auto",
+                    WEATHER_URL, lat, lon, DAILY_FIELDS);
+
+            JsonNode jsonNode = transport.getJson(url);
+            Map<String, Object> forecast = parseForecast(jsonNode.get("daily"), lat, lon, cityName);
 
-            forecast.put("forecast", dailyForecast);
+            snapshotStore.save(WeatherSnapshotStore.Kind.FORECAST, lat, lon, forecast);
             return forecast;
         } catch (Exception e) {
             throw new RuntimeException("获取天气预报失败: " + e.getMessage());
         }
     }
 
+    /**
+     * 解析每日预报数据
+     */
+    private Map<String, Object> parseForecast(JsonNode daily, double lat, double lon, String cityName) {
+        Map<String, Object> forecast = new HashMap<>();
+        forecast.put("city", cityName != null ? cityName : "未知位置");
+        forecast.put("latitude", lat);
+        forecast.put("longitude", lon);
+
+        List<Map<String, Object>> dailyForecast = new ArrayList<>();
+        JsonNode dates = daily.get("time");
+        JsonNode maxTemps = daily.get("temperature_2m_max");
+        JsonNode minTemps = daily.get("temperature_2m_min");
+        JsonNode weatherCodes = daily.get("weather_code");
+        JsonNode precipitations = daily.get("precipitation_sum");
+        JsonNode windSpeeds = daily.get("wind_speed_10m_max");
+
+        for (int i = 0; i < dates.size(); i++) {
+            Map<String, Object> dayWeather = new HashMap<>();
+            dayWeather.put("date", dates.get(i).asText());
+            dayWeather.put("maxTemp", maxTemps.get(i).asDouble());
+            dayWeather.put("minTemp", minTemps.get(i).asDouble());
+            dayWeather.put("precipitation", precipitations.get(i).asDouble());
+            dayWeather.put("windSpeed", windSpeeds.get(i).asDouble());
+
+            int weatherCode = weatherCodes.get(i).asInt();
+            dayWeather.put("weatherCode", weatherCode);
+            dayWeather.put("description", getWeatherDescription(weatherCode));
+
+            dailyForecast.add(dayWeather);
+        }
+
+        forecast.put("forecast", dailyForecast);
+        return forecast;
+    }
+
     /**
      * 获取空气质量信息
      */
     public Map<String, Object> getAirQuality(double lat, double lon) {
+        Map<String, Object> cached = snapshotStore.getFresh(WeatherSnapshotStore.Kind.AIR_QUALITY, lat, lon);
+        if (cached != null) {
+            return cached;
+        }
+
         try {
             LocalDate today = LocalDate.now();
             String dateStr = today.format(DateTimeFormatter.ISO_LOCAL_DATE);
@@ -217,16 +265,7 @@ public class WeatherService {
                     "%s?latitude=%.6f&longitude=%.6f&current=pm10,pm2_5,carbon_monoxide,nitrogen_dioxide,ozone&start_date=%s&end_date=%s",
                     AIR_QUALITY_URL, lat, lon, dateStr, dateStr);
 
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(url))
-                    .timeout(Duration.ofSeconds(10))
-                    .GET()
-                    .build();
-
-            HttpResponse<String> response = httpClient.send(request,
-                    HttpResponse.BodyHandlers.ofString());
-
-            JsonNode jsonNode = objectMapper.readTree(response.body());
+            JsonNode jsonNode = transport.getJson(url);
             JsonNode current = jsonNode.get("current");
 
             Map<String, Object> airQuality = new HashMap<>();
@@ -244,12 +283,76 @@ public class WeatherService {
             String aqiLevel = getAirQualityLevel(pm25);
             airQuality.put("aqiLevel", aqiLevel);
 
+            snapshotStore.save(WeatherSnapshotStore.Kind.AIR_QUALITY, lat, lon, airQuality);
             return airQuality;
         } catch (Exception e) {
             throw new RuntimeException("获取空气质量信息失败: " + e.getMessage());
         }
     }
 
+    /**
+     * 获取本地保存的历史天气快照
+     */
+    public Map<String, Object> getWeatherHistory(double lat, double lon, int hours) {
+        long since = System.currentTimeMillis() - Duration.ofHours(hours).toMillis();
+        List<Map<String, Object>> snapshots = snapshotStore.getHistory(WeatherSnapshotStore.Kind.CURRENT, lat, lon, since);
+
+        Map<String, Object> history = new HashMap<>();
+        String cityName = getCityNameByCoordinates(lat, lon);
+        history.put("city", cityName != null ? cityName : "未知位置");
+        history.put("latitude", lat);
+        history.put("longitude", lon);
+        history.put("hours", hours);
+        history.put("count", snapshots.size());
+        history.put("history", snapshots);
+        return history;
+    }
+
+    /**
+     * 批量刷新多个位置的天气快照（供后台预取使用）
+     * 一次请求Open-Meteo获取所有坐标的数据，返回成功刷新的位置数
+     */
+    public int refreshSnapshots(WeatherSnapshotStore.Kind kind, List<LocationAccessTracker.HotLocation> locations) {
+        if (kind == WeatherSnapshotStore.Kind.AIR_QUALITY) {
+            throw new IllegalArgumentException("不支持批量刷新的快照类型: " + kind);
+        }
+        if (locations.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            String latitudes = locations.stream()
+                    .map(l -> String.format(Locale.ROOT, "%.6f", l.getLatitude()))
+                    .collect(Collectors.joining(","));
+            String longitudes = locations.stream()
+                    .map(l -> String.format(Locale.ROOT, "%.6f", l.getLongitude()))
+                    .collect(Collectors.joining(","));
+            String fields = kind == WeatherSnapshotStore.Kind.CURRENT
+                    ? "current=" + CURRENT_FIELDS : "daily=" + DAILY_FIELDS;
+            String url = String.format("%s?latitude=%s&longitude=%s&%s&timezone=auto",
+                    WEATHER_URL, latitudes, longitudes, fields);
+
+            // 单个坐标时返回对象，多个坐标时按请求顺序返回数组
+            JsonNode jsonNode = transport.getJson(url);
+            int refreshed = 0;
+            for (int i = 0; i < locations.size(); i++) {
+                JsonNode result = jsonNode.isArray() ? jsonNode.get(i) : jsonNode;
+                LocationAccessTracker.HotLocation location = locations.get(i);
+                double lat = location.getLatitude();
+                double lon = location.getLongitude();
+
+                Map<String, Object> data = kind == WeatherSnapshotStore.Kind.CURRENT
+                        ? parseCurrentWeather(result.get("current"), lat, lon, location.getCityName())
+                        : parseForecast(result.get("daily"), lat, lon, location.getCityName());
+                snapshotStore.save(kind, lat, lon, data);
+                refreshed++;
+            }
+            return refreshed;
+        } catch (Exception e) {
+            throw new RuntimeException("批量刷新天气数据失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 根据天气代码获取天气描述
      */
@@ -0,0 +1,540 @@
+package com.kun.datemcpserver.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * 天气快照本地存储
+ * 以追加写的二进制文件保存已获取的天气、预报和空气质量数据，
+ * 启动时扫描文件重建 (类型, 坐标) -> 时间序列 的内存索引，使新进程无需访问网络即可响应近期查询
+ *
+ * 多个进程可共用同一文件：扫描、追加和压缩都在锁文件的排他锁内进行，
+ * 读取时先无锁比较文件标识和长度，未变化时直接读内存索引；
+ * 有其他进程的追加时加锁读入新记录，文件被压缩替换后重新打开
+ *
+ * 文件格式：文件头 MAGIC，之后为连续的记录
+ * [int 记录长度][byte 类型][int 纬度*100][int 经度*100][long 获取时间][JSON数据][int CRC32]
+ */
+@Component
+public class WeatherSnapshotStore {
+
+    private static final Logger log = LoggerFactory.getLogger(WeatherSnapshotStore.class);
+
+    private static final int MAGIC = 0x57535331; // "WSS1"
+    private static final int HEADER_SIZE = Integer.BYTES;
+    // 类型 + 纬度 + 经度 + 获取时间
+    private static final int FIXED_SIZE = 1 + Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+
+    /**
+     * 快照类型
+     */
+    public enum Kind {
+        CURRENT(1), FORECAST(2), AIR_QUALITY(3);
+
+        private final byte code;
+
+        Kind(int code) {
+            this.code = (byte) code;
+        }
+
+        static Kind of(byte code) {
+            for (Kind kind : values()) {
+                if (kind.code == code) {
+                    return kind;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 单条快照在文件中的位置
+     */
+    private record Entry(long fetchedAt, long offset, int length) {
+    }
+
+    /**
+     * 在锁内执行的操作
+     */
+    private interface LockedAction<T> {
+        T run() throws IOException;
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Long, List<Entry>> index = new HashMap<>();
+    // 进程内：读取共享索引，修改索引或文件时独占
+    private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+
+    private final boolean enabled;
+    private final Path path;
+    private final Path lockPath;
+    private final Map<Kind, Long> ttlMillis;
+    private final long retentionMillis;
+
+    // 数据文件会被压缩替换，跨进程的锁加在独立的锁文件上
+    private FileChannel lockChannel;
+    private FileChannel channel;
+    // 当前打开的数据文件标识，与路径上的文件不一致说明已被其他进程替换
+    private Object fileIdentity;
+    // 已扫描进索引的文件长度，其后的内容是其他进程追加的记录
+    private long scannedSize;
+
+    public WeatherSnapshotStore(@Value("${weather.store.enabled:true}") boolean enabled,
+                                @Value("${weather.store.path:${user.home}/.date-mcp-server/weather-snapshots.dat}") String path,
+                                @Value("${weather.store.current-ttl-minutes:10}") long currentTtlMinutes,
+                                @Value("${weather.store.forecast-ttl-minutes:60}") long forecastTtlMinutes,
+                                @Value("${weather.store.air-quality-ttl-minutes:30}") long airQualityTtlMinutes,
+                                @Value("${weather.store.retention-hours:72}") long retentionHours) {
+        this.path = Path.of(path);
+        this.lockPath = this.path.resolveSibling(this.path.getFileName() + ".lock");
+        this.ttlMillis = Map.of(
+                Kind.CURRENT, Duration.ofMinutes(currentTtlMinutes).toMillis(),
+                Kind.FORECAST, Duration.ofMinutes(forecastTtlMinutes).toMillis(),
+                Kind.AIR_QUALITY, Duration.ofMinutes(airQualityTtlMinutes).toMillis());
+        this.retentionMillis = Duration.ofHours(retentionHours).toMillis();
+
+        boolean opened = false;
+        if (enabled) {
+            try {
+                Files.createDirectories(this.path.toAbsolutePath().getParent());
+                lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                exclusive(() -> null);
+                opened = true;
+            } catch (IOException e) {
+                log.warn("打开天气快照文件失败，将不使用本地存储: {}", e.getMessage());
+                close();
+            }
+        }
+        this.enabled = opened;
+    }
+
+    /**
+     * 获取未过期的最新快照，没有时返回null
+     */
+    public Map<String, Object> getFresh(Kind kind, double lat, double lon) {
+        if (!enabled) {
+            return null;
+        }
+        try {
+            return query(() -> {
+                Entry latest = latest(kind, lat, lon);
+                if (latest == null || System.currentTimeMillis() - latest.fetchedAt() > ttlMillis.get(kind)) {
+                    return null;
+                }
+                return read(latest);
+            });
+        } catch (IOException e) {
+            log.warn("读取天气快照失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 最新快照的获取时间，没有时返回-1
+     */
+    public long getLatestFetchTime(Kind kind, double lat, double lon) {
+        if (!enabled) {
+            return -1;
+        }
+        try {
+            Entry latest = query(() -> latest(kind, lat, lon));
+            return latest == null ? -1 : latest.fetchedAt();
+        } catch (IOException e) {
+            log.warn("读取天气快照失败: {}", e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * 本地存储是否可用：未启用或文件打开失败时为false
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 快照的有效期（毫秒）
+     */
+    public long getTtlMillis(Kind kind) {
+        return ttlMillis.get(kind);
+    }
+
+    /**
+     * 查询指定时间之后的历史快照，按获取时间升序
+     */
+    public List<Map<String, Object>> getHistory(Kind kind, double lat, double lon, long sinceMillis) {
+        List<Map<String, Object>> history = new ArrayList<>();
+        if (!enabled) {
+            return history;
+        }
+        try {
+            query(() -> {
+                for (Entry entry : index.getOrDefault(key(kind, lat, lon), List.of())) {
+                    if (entry.fetchedAt() >= sinceMillis) {
+                        Map<String, Object> snapshot = read(entry);
+                        if (snapshot != null) {
+                            history.add(snapshot);
+                        }
+                    }
+                }
+                return null;
+            });
+        } catch (IOException e) {
+            log.warn("读取天气快照失败: {}", e.getMessage());
+        }
+        return history;
+    }
+
+    /**
+     * 追加保存一条快照
+     */
+    public void save(Kind kind, double lat, double lon, Map<String, Object> data) {
+        save(kind, lat, lon, data, System.currentTimeMillis());
+    }
+
+    void save(Kind kind, double lat, double lon, Map<String, Object> data, long fetchedAt) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            ByteBuffer record = encode(kind, lat, lon, fetchedAt, objectMapper.writeValueAsBytes(data));
+            exclusive(() -> {
+                // 加锁后已读入其他进程的追加，scannedSize 即文件末尾
+                long offset = scannedSize;
+                while (record.hasRemaining()) {
+                    channel.write(record, offset + record.position());
+                }
+                index.computeIfAbsent(key(kind, lat, lon), k -> new ArrayList<>())
+                        .add(new Entry(fetchedAt, offset, record.capacity()));
+                scannedSize = offset + record.capacity();
+                return null;
+            });
+        } catch (IOException e) {
+            log.warn("保存天气快照失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 定期压缩文件：存在超过保留期的快照时重写为新文件并原子替换
+     */
+    @Scheduled(initialDelayString = "${weather.store.compact-interval-minutes:60}",
+            fixedDelayString = "${weather.store.compact-interval-minutes:60}",
+            timeUnit = TimeUnit.MINUTES)
+    public void compact() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int removed = exclusive(this::rewriteWithoutExpired);
+            if (removed > 0) {
+                log.debug("已压缩天气快照文件，丢弃 {} 条过期快照", removed);
+            }
+        } catch (IOException e) {
+            log.warn("压缩天气快照文件失败: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        indexLock.writeLock().lock();
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            if (lockChannel != null) {
+                lockChannel.close();
+            }
+        } catch (IOException e) {
+            log.debug("关闭天气快照文件失败: {}", e.getMessage());
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 只读操作：文件未被替换且没有新的追加时直接读索引，否则同步后再执行
+     */
+    private <T> T query(LockedAction<T> action) throws IOException {
+        indexLock.readLock().lock();
+        try {
+            if (isCurrent()) {
+                return action.run();
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        return exclusive(action);
+    }
+
+    /**
+     * 持有进程内写锁和文件排他锁，同步索引后执行操作
+     */
+    private <T> T exclusive(LockedAction<T> action) throws IOException {
+        indexLock.writeLock().lock();
+        try {
+            FileLock lock = lockChannel.lock();
+            try {
+                sync();
+                return action.run();
+            } finally {
+                lock.release();
+            }
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 无锁检查索引是否与文件一致：标识相同说明未被替换，长度相同说明没有其他进程追加
+     * 已索引的记录不会被修改，检查后文件才发生变化时读到的仍是一致的旧数据
+     */
+    private boolean isCurrent() throws IOException {
+        if (channel == null) {
+            return false;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return identity(attributes).equals(fileIdentity) && attributes.size() == scannedSize;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 使索引与文件一致：文件被替换时重新打开并完整扫描，否则只扫描新追加的部分
+     */
+    private void sync() throws IOException {
+        if (channel == null || !currentIdentity().equals(fileIdentity)) {
+            if (channel != null) {
+                channel.close();
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            fileIdentity = currentIdentity();
+            index.clear();
+            scannedSize = 0;
+        }
+        if (channel.size() < scannedSize) {
+            index.clear();
+            scannedSize = 0;
+        }
+        scan();
+    }
+
+    /**
+     * 从 scannedSize 开始扫描记录加入索引，遇到损坏或不完整的记录时截断文件尾部
+     * 追加都在锁内完成，持锁时看到的不完整记录只可能来自已崩溃的进程
+     */
+    private void scan() throws IOException {
+        long size = channel.size();
+        if (scannedSize < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (size < HEADER_SIZE || channel.read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC) {
+                if (size > 0) {
+                    log.warn("天气快照文件头无效，已重建");
+                }
+                channel.truncate(0);
+                channel.write(ByteBuffer.allocate(HEADER_SIZE).putInt(0, MAGIC), 0);
+                scannedSize = HEADER_SIZE;
+                return;
+            }
+            scannedSize = HEADER_SIZE;
+        }
+
+        long position = scannedSize;
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+        while (position + Integer.BYTES <= size) {
+            lengthBuffer.clear();
+            channel.read(lengthBuffer, position);
+            int bodyLength = lengthBuffer.getInt(0);
+            int recordLength = Integer.BYTES + bodyLength;
+            if (bodyLength < FIXED_SIZE + Integer.BYTES || bodyLength > MAX_RECORD_SIZE
+                    || position + recordLength > size) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(recordLength);
+            channel.read(record, position);
+            if (!verify(record)) {
+                break;
+            }
+            Kind kind = Kind.of(record.get(Integer.BYTES));
+            if (kind != null) {
+                int latKey = record.getInt(Integer.BYTES + 1);
+                int lonKey = record.getInt(Integer.BYTES + 1 + Integer.BYTES);
+                long fetchedAt = record.getLong(Integer.BYTES + 1 + 2 * Integer.BYTES);
+                index.computeIfAbsent(key(kind, latKey, lonKey), k -> new ArrayList<>())
+                        .add(new Entry(fetchedAt, position, recordLength));
+            }
+            position += recordLength;
+        }
+        if (position < size) {
+            log.warn("天气快照文件在偏移 {} 处损坏，已截断", position);
+            channel.truncate(position);
+        }
+        scannedSize = position;
+    }
+
+    /**
+     * 丢弃超过保留期的快照，返回丢弃的条数；没有过期快照时不重写文件
+     */
+    private int rewriteWithoutExpired() throws IOException {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        int expired = 0;
+        for (List<Entry> entries : index.values()) {
+            for (Entry entry : entries) {
+                if (entry.fetchedAt() < cutoff) {
+                    expired++;
+                }
+            }
+        }
+        if (expired == 0) {
+            return 0;
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Map<Long, List<Entry>> compacted = new HashMap<>();
+        long position = HEADER_SIZE;
+        try {
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                out.write(ByteBuffer.allocate(HEADER_SIZE).putInt(0, MAGIC));
+                for (Map.Entry<Long, List<Entry>> e : index.entrySet()) {
+                    for (Entry entry : e.getValue()) {
+                        if (entry.fetchedAt() < cutoff) {
+                            continue;
+                        }
+                        ByteBuffer record = ByteBuffer.allocate(entry.length());
+                        channel.read(record, entry.offset());
+                        record.flip();
+                        out.write(record, position);
+                        compacted.computeIfAbsent(e.getKey(), k -> new ArrayList<>())
+                                .add(new Entry(entry.fetchedAt(), position, entry.length()));
+                        position += entry.length();
+                    }
+                }
+                out.force(false);
+            }
+            try {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        // 替换成功后才切换到新文件；打开失败时保留旧通道，下次访问时 sync 会重新打开
+        FileChannel replaced = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.close();
+        channel = replaced;
+        fileIdentity = currentIdentity();
+        index.clear();
+        index.putAll(compacted);
+        scannedSize = position;
+        return expired;
+    }
+
+    /**
+     * 路径上当前文件的标识，不支持文件标识的系统上退化为创建时间；文件不存在时返回空对象
+     */
+    private Object currentIdentity() throws IOException {
+        try {
+            return identity(Files.readAttributes(path, BasicFileAttributes.class));
+        } catch (NoSuchFileException e) {
+            return new Object();
+        }
+    }
+
+    private static Object identity(BasicFileAttributes attributes) {
+        return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+    }
+
+    private Entry latest(Kind kind, double lat, double lon) {
+        List<Entry> entries = index.get(key(kind, lat, lon));
+        return entries == null || entries.isEmpty() ? null : entries.get(entries.size() - 1);
+    }
+
+    private Map<String, Object> read(Entry entry) {
+        try {
+            ByteBuffer record = ByteBuffer.allocate(entry.length());
+            channel.read(record, entry.offset());
+            int payloadOffset = Integer.BYTES + FIXED_SIZE;
+            int payloadLength = entry.length() - payloadOffset - Integer.BYTES;
+            return objectMapper.readValue(record.array(), payloadOffset, payloadLength,
+                    new TypeReference<Map<String, Object>>() {
+                    });
+        } catch (IOException e) {
+            log.warn("读取天气快照失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static ByteBuffer encode(Kind kind, double lat, double lon, long fetchedAt, byte[] payload) {
+        int bodyLength = FIXED_SIZE + payload.length + Integer.BYTES;
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + bodyLength);
+        record.putInt(bodyLength)
+                .put(kind.code)
+                .putInt(coordinateKey(lat))
+                .putInt(coordinateKey(lon))
+                .putLong(fetchedAt)
+                .put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), Integer.BYTES, FIXED_SIZE + payload.length);
+        record.putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private static boolean verify(ByteBuffer record) {
+        int checksumOffset = record.capacity() - Integer.BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), Integer.BYTES, checksumOffset - Integer.BYTES);
+        return (int) crc.getValue() == record.getInt(checksumOffset);
+    }
+
+    /**
+     * 坐标按0.01度（约1公里）量化，邻近的查询共用同一组快照
+     */
+    private static int coordinateKey(double degrees) {
+        return (int) Math.round(degrees * 100);
+    }
+
+    /**
+     * (类型, 量化坐标) 的索引键，访问统计等按相同粒度聚合位置时共用
+     */
+    static long key(Kind kind, double lat, double lon) {
+        return key(kind, coordinateKey(lat), coordinateKey(lon));
+    }
+
+    private static long key(Kind kind, int latKey, int lonKey) {
+        return ((long) kind.code << 48) | ((long) (latKey + 9000) << 24) | (lonKey + 18000);
+    }
+}
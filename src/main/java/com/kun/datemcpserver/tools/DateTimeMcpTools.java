@@ -1,6 +1,7 @@
 package com.kun.datemcpserver.tools;
 
 import com.kun.datemcpserver.service.DateTimeService;
+import com.kun.datemcpserver.service.TimeSeriesService;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.stereotype.Component;
@@ -15,9 +16,11 @@ import java.util.Map;
 public class DateTimeMcpTools implements McpTool {
 
     private final DateTimeService dateTimeService;
+    private final TimeSeriesService timeSeriesService;
 
-    public DateTimeMcpTools(DateTimeService dateTimeService) {
+    public DateTimeMcpTools(DateTimeService dateTimeService, TimeSeriesService timeSeriesService) {
         this.dateTimeService = dateTimeService;
+        this.timeSeriesService = timeSeriesService;
     }
 
     /**
@@ -68,6 +71,18 @@ public class DateTimeMcpTools implements McpTool {
         return dateTimeService.timestampToDateTime(timestamp);
     }
 
+    /**
+     * 批量分析时间戳
+     */
+    @Tool(name = "analyze_timestamps", description = "批量分析大量时间戳（毫秒），返回数量、最早/最晚/中位时间、按小时/日期/星期的分布统计（日期分桶最多返回1000天，超出时bucketsTruncated为true）以及超过阈值的时间间隔，适合日志分析")
+    public Map<String, Object> analyzeTimestamps(
+            @ToolParam(description = "时间戳数组（毫秒），无需有序，例如：[1703123456789, 1703127056789]") long[] timestamps,
+            @ToolParam(description = "时区ID，例如：Asia/Shanghai, UTC；为空时使用系统默认时区") String zoneId,
+            @ToolParam(description = "分桶方式，可选值：hour（按小时）, day（按日期）, weekday（按星期）") String bucket,
+            @ToolParam(description = "间隔检测阈值（毫秒），相邻时间戳之差超过该值视为间隔，小于等于0时默认3600000") long gapThresholdMillis) {
+        return timeSeriesService.analyzeTimestamps(timestamps, zoneId, bucket, gapThresholdMillis);
+    }
+
     /**
      * 可读时间转换为时间戳
      */
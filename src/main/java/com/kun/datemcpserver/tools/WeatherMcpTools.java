@@ -68,5 +68,24 @@ public class WeatherMcpTools implements McpTool {
             @ToolParam(description = "经度，范围 -180 到 180，例如：116.4074") double lon) {
         return weatherService.getAirQuality(lat, lon);
     }
+
+    /**
+     * 获取本地保存的历史天气
+     */
+    @Tool(name = "get_weather_history", description = "查询本地保存的指定位置历史天气快照，不访问网络")
+    public Map<String, Object> getWeatherHistory(
+            @ToolParam(description = "纬度，范围 -90 到 90，例如：39.9042") double lat,
+            @ToolParam(description = "经度，范围 -180 到 180，例如：116.4074") double lon,
+            @ToolParam(description = "查询最近多少小时的记录，例如：24") int hours) {
+        return weatherService.getWeatherHistory(lat, lon, hours);
+    }
+
+    /**
+     * 获取上游传输统计
+     */
+    @Tool(name = "get_upstream_transport_stats", description = "获取访问天气API的传输统计，包括各主机的请求数、传输字节数、压缩率和不同TLS会话数。reuseRateUpperBound由TLS会话数推算，会话恢复时多个连接共用同一会话，因此它只是连接复用率的上限，不是实测值")
+    public Map<String, Object> getUpstreamTransportStats() {
+        return weatherService.getTransportStats();
+    }
 }
 
@@ -3,7 +3,11 @@ package com.kun.datemcpserver;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = {
+        "weather.store.path=target/test-weather-snapshots.dat",
+        "weather.prefetch.enabled=false",
+        "weather.http.warm-up=false"
+})
 class DateMcpServerApplicationTests {
 
     @Test
@@ -0,0 +1,109 @@
+package com.kun.datemcpserver.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeocodingIndexTest {
+
+    private final GeocodingIndex bundled = new GeocodingIndex("", 80);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void loadsBundledData() {
+        assertTrue(bundled.size() > 100);
+    }
+
+    @Test
+    void findsByExactNameAndAlias() {
+        assertEquals("北京", bundled.findByName("北京").name());
+        assertEquals("北京", bundled.findByName("北京市").name());
+        assertEquals("北京", bundled.findByName("beijing").name());
+        assertEquals("北京", bundled.findByName(" Beijing ").name());
+        assertEquals("大连", bundled.findByName("Dairen").name());
+        assertEquals("旧金山", bundled.findByName("San Francisco").name());
+    }
+
+    @Test
+    void doesNotResolvePrefixes() {
+        assertNull(bundled.findByName("Dali"));
+        assertNull(bundled.findByName("New"));
+        assertNull(bundled.findByName("San"));
+        assertNull(bundled.findByName("Jin"));
+        assertNull(bundled.findByName("北"));
+    }
+
+    @Test
+    void ignoresBlankNames() {
+        assertNull(bundled.findByName(null));
+        assertNull(bundled.findByName(""));
+        assertNull(bundled.findByName(" ,. "));
+    }
+
+    @Test
+    void prefersMostPopulousOnDuplicateNames() throws IOException {
+        GeocodingIndex index = index(30,
+                "Springfield\tSpringfield\t\t39.8\t-89.6\tUS\t114000\t182\tAmerica/Chicago",
+                "Springfield\tSpringfield\t\t42.1\t-72.6\tUS\t155000\t21\tAmerica/New_York");
+
+        assertEquals(42.1, index.findByName("springfield").latitude());
+    }
+
+    @Test
+    void findsNearestWithinMaxDistance() {
+        GeocodingIndex.Place place = bundled.findNearest(39.95, 116.30);
+
+        assertNotNull(place);
+        assertEquals("北京", place.name());
+        assertNull(bundled.findNearest(0.0, -150.0));
+        assertNull(bundled.findNearest(Double.NaN, 116.30));
+    }
+
+    @Test
+    void findsNearestAcrossAntimeridian() throws IOException {
+        GeocodingIndex index = index(80,
+                "East\tEast\t\t-16.50\t179.90\tFJ\t1000\t0\tPacific/Fiji",
+                "Far\tFar\t\t-16.50\t170.00\tFJ\t1000\t0\tPacific/Fiji");
+
+        assertEquals("East", index.findNearest(-16.50, -179.95).name());
+        assertEquals("East", index.findNearest(-16.50, 180.0).name());
+    }
+
+    @Test
+    void searchesWholeRingNearPoles() throws IOException {
+        GeocodingIndex index = index(80,
+                "North\tNorth\t\t89.90\t-170.00\tXX\t0\t0\tUTC",
+                "South\tSouth\t\t-89.90\t10.00\tXX\t0\t0\tUTC");
+
+        assertEquals("North", index.findNearest(89.95, 10.0).name());
+        assertEquals("North", index.findNearest(90.0, 0.0).name());
+        assertEquals("South", index.findNearest(-90.0, 179.0).name());
+        assertDoesNotThrow(() -> index.findNearest(-89.99, -180.0));
+    }
+
+    @Test
+    void normalizesNames() {
+        assertEquals("newyork", GeocodingIndex.normalize("New York"));
+        assertEquals("xian", GeocodingIndex.normalize("Xi'an"));
+        assertEquals("上海", GeocodingIndex.normalize("上海市"));
+        assertEquals("市", GeocodingIndex.normalize("市"));
+    }
+
+    private GeocodingIndex index(double maxDistanceKm, String... lines) throws IOException {
+        Path file = tempDir.resolve("cities.tsv");
+        Files.writeString(file, "# test data\n" + String.join("\n", lines) + "\n", StandardCharsets.UTF_8);
+        return new GeocodingIndex(file.toString(), maxDistanceKm);
+    }
+}
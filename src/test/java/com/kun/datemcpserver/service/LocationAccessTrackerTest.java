@@ -0,0 +1,75 @@
+package com.kun.datemcpserver.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocationAccessTrackerTest {
+
+    private static final WeatherSnapshotStore.Kind CURRENT = WeatherSnapshotStore.Kind.CURRENT;
+
+    private final LocationAccessTracker tracker = new LocationAccessTracker(60, 1000, 1.5);
+
+    @Test
+    void ordersLocationsByAccessCount() {
+        tracker.recordAccess(CURRENT, 31.23, 121.47, "上海");
+        tracker.recordAccess(CURRENT, 31.23, 121.47, "上海");
+        tracker.recordAccess(CURRENT, 39.90, 116.40, "北京");
+        tracker.recordAccess(CURRENT, 39.90, 116.40, null);
+        tracker.recordAccess(CURRENT, 39.90, 116.40, null);
+        tracker.recordAccess(WeatherSnapshotStore.Kind.FORECAST, 39.90, 116.40, "北京");
+        tracker.recordAccess(WeatherSnapshotStore.Kind.FORECAST, 39.90, 116.40, "北京");
+
+        List<LocationAccessTracker.HotLocation> top = tracker.getTopLocations(2);
+        assertEquals(2, top.size());
+        assertEquals("北京", top.get(0).getCityName());
+        assertEquals(CURRENT, top.get(0).getKind());
+    }
+
+    @Test
+    void singleAccessIsNotHot() {
+        tracker.recordAccess(CURRENT, 39.90, 116.40, "北京");
+
+        assertTrue(tracker.getTopLocations(10).isEmpty());
+    }
+
+    @Test
+    void repeatedAccessBecomesHot() {
+        tracker.recordAccess(CURRENT, 39.90, 116.40, "北京");
+        assertTrue(tracker.getTopLocations(10).isEmpty());
+
+        // 未达到阈值的位置仍保留得分，再次访问后成为热门
+        tracker.recordAccess(CURRENT, 39.90, 116.40, "北京");
+        assertEquals(1, tracker.getTopLocations(10).size());
+    }
+
+    @Test
+    void aggregatesNearbyCoordinates() {
+        tracker.recordAccess(CURRENT, 39.9042, 116.4074, null);
+        tracker.recordAccess(CURRENT, 39.9038, 116.4071, null);
+
+        assertEquals(1, tracker.getTopLocations(10).size());
+    }
+
+    @Test
+    void dropsLocationsDecayedBelowMinScore() {
+        tracker.recordAccess(CURRENT, 31.23, 121.47, "上海");
+        tracker.recordAccess(CURRENT, 31.23, 121.47, "上海");
+        tracker.recordAccess(CURRENT, 39.90, 116.40, "北京");
+        tracker.recordAccess(CURRENT, 39.90, 116.40, "北京");
+        tracker.recordAccess(CURRENT, 39.90, 116.40, "北京");
+        long now = System.currentTimeMillis();
+
+        // 50分钟后：访问两次的得分约1.12，访问三次的约1.68
+        List<LocationAccessTracker.HotLocation> top =
+                tracker.getTopLocations(10, now + Duration.ofMinutes(50).toMillis());
+        assertEquals(1, top.size());
+        assertEquals("北京", top.get(0).getCityName());
+
+        assertTrue(tracker.getTopLocations(10, now + Duration.ofHours(3).toMillis()).isEmpty());
+    }
+}
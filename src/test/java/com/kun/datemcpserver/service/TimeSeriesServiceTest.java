@@ -0,0 +1,233 @@
+package com.kun.datemcpserver.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeSeriesServiceTest {
+
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+
+    private final TimeSeriesService service = new TimeSeriesService();
+
+    @Test
+    void parallelAnalysisMatchesSerialReference() {
+        // 131072 个按秒递增的时间戳，跨越纽约夏令时开始；超过并行阈值 65536
+        int count = 1 << 17;
+        long start = ZonedDateTime.of(2024, 3, 9, 12, 0, 0, 0, NEW_YORK).toInstant().toEpochMilli();
+        long[] sorted = new long[count];
+        for (int i = 0; i < count; i++) {
+            sorted[i] = start + i * 1000L;
+            // 间隔恰好落在顶层拆分点和一个子块边界上
+            if (i >= count / 2) {
+                sorted[i] += 2 * HOUR;
+            }
+            if (i >= 3 * (1 << 14)) {
+                sorted[i] += 3 * HOUR;
+            }
+        }
+        long[] shuffled = shuffle(sorted, new Random(42));
+
+        for (String bucket : List.of("hour", "day", "weekday")) {
+            Map<String, Object> result = service.analyzeTimestamps(shuffled, NEW_YORK.getId(), bucket, HOUR);
+
+            assertEquals(count, result.get("count"));
+            assertEquals(sorted[0], result.get("minTimestamp"));
+            assertEquals(sorted[count - 1], result.get("maxTimestamp"));
+            assertEquals(serialGapCount(sorted, HOUR), result.get("gapCount"));
+            assertEquals(serialBuckets(sorted, NEW_YORK, bucket), buckets(result));
+        }
+    }
+
+    @Test
+    void countsGapsAcrossChunkBoundaries() {
+        int count = 1 << 17;
+        long[] timestamps = new long[count];
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = i * 1000L + (i >= count / 2 ? 5 * HOUR : 0);
+        }
+
+        Map<String, Object> result = service.analyzeTimestamps(timestamps, "UTC", "hour", HOUR);
+
+        assertEquals(1L, result.get("gapCount"));
+        List<Map<String, Object>> gaps = gaps(result);
+        assertEquals(1, gaps.size());
+        assertEquals(5 * HOUR + 1000L, gaps.get(0).get("durationMillis"));
+    }
+
+    @Test
+    void hourBucketsOnSpringForwardDay() {
+        // 2024-03-10 纽约凌晨2点直接跳到3点
+        long localMidnight = ZonedDateTime.of(2024, 3, 10, 0, 0, 0, 0, NEW_YORK).toInstant().toEpochMilli();
+        long[] timestamps = new long[24];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = localMidnight + i * HOUR;
+        }
+
+        Map<String, Object> buckets = buckets(service.analyzeTimestamps(timestamps, NEW_YORK.getId(), "hour", 0));
+
+        assertEquals(0L, buckets.get("02"));
+        // 第24个小时已是次日 00:00
+        assertEquals(2L, buckets.get("00"));
+        assertEquals(1L, buckets.get("01"));
+        assertEquals(1L, buckets.get("03"));
+        assertEquals(1L, buckets.get("23"));
+    }
+
+    @Test
+    void hourBucketsOnFallBackDay() {
+        // 2024-11-03 纽约凌晨1点出现两次
+        long localMidnight = ZonedDateTime.of(2024, 11, 3, 0, 0, 0, 0, NEW_YORK).toInstant().toEpochMilli();
+        long[] timestamps = new long[25];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = localMidnight + i * HOUR;
+        }
+
+        Map<String, Object> buckets = buckets(service.analyzeTimestamps(timestamps, NEW_YORK.getId(), "hour", 0));
+
+        assertEquals(2L, buckets.get("01"));
+        assertEquals(1L, buckets.get("00"));
+        assertEquals(1L, buckets.get("02"));
+        assertEquals(1L, buckets.get("23"));
+    }
+
+    @Test
+    void weekdayAndDayBucketsUseZone() {
+        // 2024-01-01T16:30Z 在UTC是星期一，在上海已是 2024-01-02 星期二
+        long timestamp = Instant.parse("2024-01-01T16:30:00Z").toEpochMilli();
+        long[] timestamps = {timestamp};
+
+        Map<String, Object> shanghaiWeekday = buckets(
+                service.analyzeTimestamps(timestamps, "Asia/Shanghai", "weekday", 0));
+        assertEquals(1L, shanghaiWeekday.get("星期二"));
+        assertEquals(0L, shanghaiWeekday.get("星期一"));
+        assertEquals(1L, buckets(service.analyzeTimestamps(timestamps, "UTC", "weekday", 0)).get("星期一"));
+
+        Map<String, Object> shanghaiDay = buckets(service.analyzeTimestamps(timestamps, "Asia/Shanghai", "DAY", 0));
+        assertEquals(Map.of("2024-01-02", 1L), shanghaiDay);
+        assertEquals(Map.of("2024-01-01", 1L), buckets(service.analyzeTimestamps(timestamps, "UTC", "day", 0)));
+    }
+
+    @Test
+    void reportsLargestGapsInDescendingOrder() {
+        // 13 个长度不同的间隔，乱序出现
+        List<Integer> gapHours = new ArrayList<>();
+        for (int h = 2; h <= 14; h++) {
+            gapHours.add(h);
+        }
+        Collections.shuffle(gapHours, new Random(7));
+        long[] timestamps = new long[gapHours.size() + 1];
+        for (int i = 0; i < gapHours.size(); i++) {
+            timestamps[i + 1] = timestamps[i] + gapHours.get(i) * HOUR;
+        }
+
+        Map<String, Object> result = service.analyzeTimestamps(timestamps, "UTC", "hour", HOUR);
+
+        assertEquals(13L, result.get("gapCount"));
+        List<Map<String, Object>> gaps = gaps(result);
+        assertEquals(10, gaps.size());
+        for (int i = 0; i < gaps.size(); i++) {
+            assertEquals((14 - i) * HOUR, gaps.get(i).get("durationMillis"));
+        }
+    }
+
+    @Test
+    void truncatesDayBucketsSeparately() {
+        long start = LocalDate.of(2020, 1, 1).atStartOfDay(ZoneId.of("UTC")).toInstant().toEpochMilli();
+        long[] timestamps = new long[1500];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = start + i * 24 * HOUR;
+        }
+
+        Map<String, Object> result = service.analyzeTimestamps(timestamps, "UTC", "day", 0);
+
+        Map<String, Object> buckets = buckets(result);
+        assertEquals(1000, buckets.size());
+        assertTrue(buckets.values().stream().allMatch(Long.class::isInstance));
+        assertEquals(1500, result.get("totalBuckets"));
+        assertEquals(true, result.get("bucketsTruncated"));
+        assertFalse((Boolean) service.analyzeTimestamps(new long[]{start}, "UTC", "day", 0).get("bucketsTruncated"));
+    }
+
+    @Test
+    void rejectsInvalidInput() {
+        long[] timestamps = {System.currentTimeMillis()};
+
+        assertThrows(IllegalArgumentException.class, () -> service.analyzeTimestamps(null, "UTC", "hour", 0));
+        assertThrows(IllegalArgumentException.class, () -> service.analyzeTimestamps(new long[0], "UTC", "hour", 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.analyzeTimestamps(timestamps, "Mars/Olympus_Mons", "hour", 0));
+        assertThrows(IllegalArgumentException.class, () -> service.analyzeTimestamps(timestamps, "UTC", "minute", 0));
+    }
+
+    private static long serialGapCount(long[] sorted, long threshold) {
+        long gaps = 0;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] - sorted[i - 1] > threshold) {
+                gaps++;
+            }
+        }
+        return gaps;
+    }
+
+    private static Map<String, Object> serialBuckets(long[] timestamps, ZoneId zone, String bucket) {
+        String[] weekDays = {"星期一", "星期二", "星期三", "星期四", "星期五", "星期六", "星期日"};
+        Map<String, Object> expected = new TreeMap<>();
+        if (bucket.equals("hour")) {
+            for (int h = 0; h < 24; h++) {
+                expected.put(String.format("%02d", h), 0L);
+            }
+        } else if (bucket.equals("weekday")) {
+            for (String day : weekDays) {
+                expected.put(day, 0L);
+            }
+        }
+        for (long timestamp : timestamps) {
+            ZonedDateTime time = Instant.ofEpochMilli(timestamp).atZone(zone);
+            String label = switch (bucket) {
+                case "hour" -> String.format("%02d", time.getHour());
+                case "weekday" -> weekDays[time.getDayOfWeek().getValue() - 1];
+                default -> time.toLocalDate().toString();
+            };
+            expected.merge(label, 1L, (a, b) -> (Long) a + (Long) b);
+        }
+        return expected;
+    }
+
+    private static long[] shuffle(long[] values, Random random) {
+        long[] shuffled = values.clone();
+        for (int i = shuffled.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long tmp = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = tmp;
+        }
+        return shuffled;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> buckets(Map<String, Object> result) {
+        return new TreeMap<>((Map<String, Object>) result.get("buckets"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> gaps(Map<String, Object> result) {
+        return (List<Map<String, Object>>) result.get("largestGaps");
+    }
+}
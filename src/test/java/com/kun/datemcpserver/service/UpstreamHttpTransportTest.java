@@ -0,0 +1,126 @@
+package com.kun.datemcpserver.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpstreamHttpTransportTest {
+
+    private static final String FORECAST_JSON = "{\"latitude\":39.9,\"longitude\":116.4,"
+            + "\"current\":{\"temperature_2m\":21.5,\"weather_code\":0}}";
+
+    private HttpServer server;
+    private UpstreamHttpTransport transport;
+    private String baseUrl;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/gzip", exchange -> {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(FORECAST_JSON.getBytes(StandardCharsets.UTF_8));
+            }
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            respond(exchange, 200, compressed.toByteArray());
+        });
+        server.createContext("/plain", exchange ->
+                respond(exchange, 200, FORECAST_JSON.getBytes(StandardCharsets.UTF_8)));
+        server.createContext("/bad-request", exchange -> respond(exchange, 400,
+                "{\"error\":true,\"reason\":\"Latitude must be in range of -90 to 90°.\"}"
+                        .getBytes(StandardCharsets.UTF_8)));
+        server.createContext("/bad-gateway", exchange ->
+                respond(exchange, 502, "<html>Bad Gateway</html>".getBytes(StandardCharsets.UTF_8)));
+        server.start();
+
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        transport = new UpstreamHttpTransport("HTTP_1_1", 5, 5, 2, 16, true, false);
+    }
+
+    @AfterEach
+    void stopServer() {
+        transport.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    void decodesGzipResponse() throws Exception {
+        JsonNode json = transport.getJson(baseUrl + "/gzip");
+
+        assertEquals(21.5, json.get("current").get("temperature_2m").asDouble());
+        Map<String, Object> host = hostStats();
+        assertEquals(1L, host.get("requests"));
+        assertEquals(1L, host.get("compressedResponses"));
+        assertEquals((long) FORECAST_JSON.length(), host.get("decodedBytes"));
+        assertTrue((long) host.get("wireBytes") > 0);
+    }
+
+    @Test
+    void readsUncompressedResponse() throws Exception {
+        JsonNode json = transport.getJson(baseUrl + "/plain");
+
+        assertEquals(0, json.get("current").get("weather_code").asInt());
+        Map<String, Object> host = hostStats();
+        assertEquals(0L, host.get("compressedResponses"));
+        assertEquals(host.get("wireBytes"), host.get("decodedBytes"));
+    }
+
+    @Test
+    void failsOnErrorStatusWithUpstreamReason() {
+        IOException e = assertThrows(IOException.class, () -> transport.getJson(baseUrl + "/bad-request"));
+
+        assertTrue(e.getMessage().contains("HTTP 400"));
+        assertTrue(e.getMessage().contains("Latitude must be in range"));
+        assertEquals(1L, hostStats().get("failures"));
+    }
+
+    @Test
+    void failsOnErrorStatusWithoutJsonBody() {
+        IOException e = assertThrows(IOException.class, () -> transport.getJson(baseUrl + "/bad-gateway"));
+
+        assertTrue(e.getMessage().contains("HTTP 502"));
+        assertEquals(1L, hostStats().get("failures"));
+        assertEquals(1L, hostStats().get("requests"));
+    }
+
+    @Test
+    void doesNotReportTlsSessionsWithoutTls() throws Exception {
+        transport.getJson(baseUrl + "/plain");
+        transport.getJson(baseUrl + "/plain");
+
+        Map<String, Object> host = hostStats();
+        assertEquals(2L, host.get("requests"));
+        assertFalse(host.containsKey("distinctTlsSessions"));
+        assertFalse(host.containsKey("reuseRateUpperBound"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> hostStats() {
+        Map<String, Object> hosts = (Map<String, Object>) transport.getStats().get("hosts");
+        return (Map<String, Object>) hosts.get("127.0.0.1");
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.kun.datemcpserver.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WeatherSnapshotStoreTest {
+
+    private static final WeatherSnapshotStore.Kind CURRENT = WeatherSnapshotStore.Kind.CURRENT;
+
+    @TempDir
+    Path tempDir;
+
+    private final List<WeatherSnapshotStore> stores = new ArrayList<>();
+
+    @AfterEach
+    void closeStores() {
+        stores.forEach(WeatherSnapshotStore::close);
+    }
+
+    @Test
+    void restoresSnapshotsAfterReopen() {
+        WeatherSnapshotStore store = store();
+        store.save(CURRENT, 39.9042, 116.4074, Map.of("temperature", 21.5));
+        store.save(WeatherSnapshotStore.Kind.FORECAST, 39.9042, 116.4074, Map.of("days", 7));
+        store.close();
+
+        WeatherSnapshotStore reopened = store();
+        assertEquals(21.5, reopened.getFresh(CURRENT, 39.9042, 116.4074).get("temperature"));
+        // 0.01度内的坐标共用同一组快照
+        assertEquals(21.5, reopened.getFresh(CURRENT, 39.9038, 116.4071).get("temperature"));
+        assertEquals(7, reopened.getFresh(WeatherSnapshotStore.Kind.FORECAST, 39.9042, 116.4074).get("days"));
+        assertNull(reopened.getFresh(WeatherSnapshotStore.Kind.AIR_QUALITY, 39.9042, 116.4074));
+        assertNull(reopened.getFresh(CURRENT, 31.2304, 121.4737));
+    }
+
+    @Test
+    void expiredSnapshotIsNotFresh() {
+        WeatherSnapshotStore store = store();
+        long fetchedAt = System.currentTimeMillis() - Duration.ofMinutes(11).toMillis();
+        store.save(CURRENT, 39.9, 116.4, Map.of("temperature", 21.5), fetchedAt);
+
+        assertNull(store.getFresh(CURRENT, 39.9, 116.4));
+        assertEquals(fetchedAt, store.getLatestFetchTime(CURRENT, 39.9, 116.4));
+        assertEquals(-1, store.getLatestFetchTime(CURRENT, 31.2, 121.5));
+    }
+
+    @Test
+    void returnsHistoryInFetchOrder() {
+        WeatherSnapshotStore store = store();
+        long now = System.currentTimeMillis();
+        store.save(CURRENT, 39.9, 116.4, Map.of("temperature", 1), now - 3_000);
+        store.save(CURRENT, 39.9, 116.4, Map.of("temperature", 2), now - 2_000);
+        store.save(CURRENT, 39.9, 116.4, Map.of("temperature", 3), now - 1_000);
+
+        List<Map<String, Object>> history = store.getHistory(CURRENT, 39.9, 116.4, now - 2_500);
+        assertEquals(2, history.size());
+        assertEquals(2, history.get(0).get("temperature"));
+        assertEquals(3, history.get(1).get("temperature"));
+    }
+
+    @Test
+    void truncatesTornTailOnOpen() throws IOException {
+        WeatherSnapshotStore store = store();
+        store.save(CURRENT, 39.9, 116.4, Map.of("temperature", 21.5));
+        store.close();
+        long validSize = Files.size(file());
+
+        // 模拟写入一半时进程崩溃：记录长度已写入，内容不完整
+        try (FileChannel channel = FileChannel.open(file(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(10).putInt(0, 100));
+        }
+
+        WeatherSnapshotStore reopened = store();
+        assertNotNull(reopened.getFresh(CURRENT, 39.9, 116.4));
+        assertEquals(validSize, Files.size(file()));
+
+        reopened.save(CURRENT, 31.2, 121.5, Map.of("temperature", 25.0));
+        reopened.close();
+        assertEquals(25.0, store().getFresh(CURRENT, 31.2, 121.5).get("temperature"));
+    }
+
+    @Test
+    void truncatesRecordWithBadChecksum() throws IOException {
+        WeatherSnapshotStore store = store();
+        store.save(CURRENT, 39.9, 116.4, Map.of("temperature", 21.5));
+        long firstRecordEnd = Files.size(file());
+        store.save(CURRENT, 31.2, 121.5, Map.of("temperature", 25.0));
+        store.close();
+
+        // 翻转第二条记录JSON中的一个字节
+        try (FileChannel channel = FileChannel.open(file(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = channel.size() - Integer.BYTES - 2;
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, position);
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) (b.get(0) ^ 0x01)}), position);
+        }
+
+        WeatherSnapshotStore reopened = store();
+        assertNotNull(reopened.getFresh(CURRENT, 39.9, 116.4));
+        assertNull(reopened.getFresh(CURRENT, 31.2, 121.5));
+        assertEquals(firstRecordEnd, Files.size(file()));
+    }
+
+    @Test
+    void rebuildsFileWithInvalidHeader() throws IOException {
+        Files.write(file(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        WeatherSnapshotStore store = store();
+        assertNull(store.getFresh(CURRENT, 39.9, 116.4));
+        store.save(CURRENT, 39.9, 116.4, Map.of("temperature", 21.5));
+        store.close();
+
+        assertEquals(21.5, store().getFresh(CURRENT, 39.9, 116.4).get("temperature"));
+    }
+
+    @Test
+    void compactionDropsExpiredSnapshots() throws IOException {
+        WeatherSnapshotStore store = store();
+        long expired = System.currentTimeMillis() - Duration.ofHours(73).toMillis();
+        store.save(CURRENT, 39.9, 116.4, Map.of("temperature", 1), expired);
+        store.save(CURRENT, 39.9, 116.4, Map.of("temperature", 2));
+        store.save(CURRENT, 31.2, 121.5, Map.of("temperature", 3), expired);
+        store.save(CURRENT, 23.1, 113.3, Map.of("temperature", 4));
+        long sizeBefore = Files.size(file());
+
+        store.compact();
+
+        assertTrue(Files.size(file()) < sizeBefore);
+        assertFalse(Files.exists(file().resolveSibling(file().getFileName() + ".tmp")));
+        assertEquals(1, store.getHistory(CURRENT, 39.9, 116.4, 0).size());
+        assertEquals(-1, store.getLatestFetchTime(CURRENT, 31.2, 121.5));
+
+        store.save(CURRENT, 31.2, 121.5, Map.of("temperature", 5));
+        store.close();
+
+        WeatherSnapshotStore reopened = store();
+        assertEquals(2, reopened.getFresh(CURRENT, 39.9, 116.4).get("temperature"));
+        assertEquals(4, reopened.getFresh(CURRENT, 23.1, 113.3).get("temperature"));
+        assertEquals(5, reopened.getFresh(CURRENT, 31.2, 121.5).get("temperature"));
+        assertEquals(1, reopened.getHistory(CURRENT, 39.9, 116.4, 0).size());
+    }
+
+    @Test
+    void compactionKeepsFileWithoutExpiredSnapshots() throws IOException {
+        WeatherSnapshotStore store = store();
+        store.save(CURRENT, 39.9, 116.4, Map.of("temperature", 21.5));
+        Object fileKey = Files.readAttributes(file(), "fileKey").get("fileKey");
+
+        store.compact();
+
+        assertEquals(fileKey, Files.readAttributes(file(), "fileKey").get("fileKey"));
+        assertNotNull(store.getFresh(CURRENT, 39.9, 116.4));
+    }
+
+    @Test
+    void sharesFileBetweenInstances() {
+        WeatherSnapshotStore first = store();
+        WeatherSnapshotStore second = store();
+
+        first.save(CURRENT, 39.9, 116.4, Map.of("temperature", 1));
+        assertEquals(1, second.getFresh(CURRENT, 39.9, 116.4).get("temperature"));
+
+        // 两个实例交替追加，不会互相覆盖
+        second.save(CURRENT, 31.2, 121.5, Map.of("temperature", 2));
+        first.save(CURRENT, 23.1, 113.3, Map.of("temperature", 3));
+        assertEquals(2, first.getFresh(CURRENT, 31.2, 121.5).get("temperature"));
+        assertEquals(3, second.getFresh(CURRENT, 23.1, 113.3).get("temperature"));
+
+        // 一个实例压缩替换文件后，另一个实例的写入仍落在新文件中
+        second.save(CURRENT, 30.6, 114.3, Map.of("temperature", 4),
+                System.currentTimeMillis() - Duration.ofHours(73).toMillis());
+        second.compact();
+        first.save(CURRENT, 22.5, 114.1, Map.of("temperature", 5));
+
+        assertEquals(-1, first.getLatestFetchTime(CURRENT, 30.6, 114.3));
+        assertEquals(5, second.getFresh(CURRENT, 22.5, 114.1).get("temperature"));
+        WeatherSnapshotStore third = store();
+        for (double[] location : new double[][]{{39.9, 116.4}, {31.2, 121.5}, {23.1, 113.3}, {22.5, 114.1}}) {
+            assertNotNull(third.getFresh(CURRENT, location[0], location[1]));
+        }
+    }
+
+    @Test
+    void readsWithoutFileLockWhenFileUnchanged() throws IOException {
+        WeatherSnapshotStore store = store();
+        store.save(CURRENT, 39.9, 116.4, Map.of("temperature", 21.5));
+
+        // 另一方持有文件锁时，文件未变化的读取不应尝试加锁
+        Path lockFile = file().resolveSibling(file().getFileName() + ".lock");
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            assertTrue(lock.isValid());
+            assertEquals(21.5, store.getFresh(CURRENT, 39.9, 116.4).get("temperature"));
+            assertEquals(1, store.getHistory(CURRENT, 39.9, 116.4, 0).size());
+            assertTrue(store.getLatestFetchTime(CURRENT, 39.9, 116.4) > 0);
+        }
+    }
+
+    @Test
+    void disabledStoreDoesNothing() {
+        WeatherSnapshotStore store = new WeatherSnapshotStore(false, file().toString(), 10, 60, 30, 72);
+        store.save(CURRENT, 39.9, 116.4, Map.of("temperature", 21.5));
+
+        assertNull(store.getFresh(CURRENT, 39.9, 116.4));
+        assertTrue(store.getHistory(CURRENT, 39.9, 116.4, 0).isEmpty());
+        assertFalse(Files.exists(file()));
+    }
+
+    @Test
+    void fallsBackWhenPathIsUnusable() throws IOException {
+        Path blocker = tempDir.resolve("blocker");
+        Files.writeString(blocker, "not a directory");
+        WeatherSnapshotStore store = new WeatherSnapshotStore(true,
+                blocker.resolve("weather.dat").toString(), 10, 60, 30, 72);
+        stores.add(store);
+
+        store.save(CURRENT, 39.9, 116.4, Map.of("temperature", 21.5));
+        assertNull(store.getFresh(CURRENT, 39.9, 116.4));
+        assertTrue(store.getHistory(CURRENT, 39.9, 116.4, 0).isEmpty());
+    }
+
+    private Path file() {
+        return tempDir.resolve("weather-snapshots.dat");
+    }
+
+    private WeatherSnapshotStore store() {
+        WeatherSnapshotStore store = new WeatherSnapshotStore(true, file().toString(), 10, 60, 30, 72);
+        stores.add(store);
+        return store;
+    }
+}